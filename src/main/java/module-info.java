@@ -58,11 +58,28 @@
  * </tr>
  *
  * <tr>
+ *  <td><a id="org.jvnet.mimepull.AttachmentStore">org.jvnet.mimepull.AttachmentStore</a></td>
+ *  <td>string</td>
+ *  <td>The {@code org.jvnet.mimepull.AttachmentStore} property defines fully qualified name for a class that extends
+ * {@link org.jvnet.mimepull.AttachmentStore}. It stores the spilled parts of the configurations that don't set a store.
+ * There is no default implementation, the parts are written to temp files.</td>
+ * </tr>
+ *
+ * <tr>
  *  <td><a id="org.jvnet.mimepull.CleanUpExecutorFactory">org.jvnet.mimepull.CleanUpExecutorFactory</a></td>
  *  <td>string</td>
  *  <td>The {@code org.jvnet.mimepull.CleanUpExecutorFactory} property defines fully qualified name for a class that implements
  * {@link org.jvnet.mimepull.CleanUpExecutorFactory}. This property works system wide and overrides whatever is set by the application.
- * There is no default implementation.</td>
+ * There is no default implementation. Deprecated: it is no longer used, the temp files of the parts that are not closed are deleted by a
+ * {@link java.lang.ref.Cleaner} as soon as the parts are unreachable.</td>
+ * </tr>
+ *
+ * <tr>
+ *  <td><a id="org.jvnet.mimepull.TransferDecoder">org.jvnet.mimepull.TransferDecoder</a></td>
+ *  <td>string</td>
+ *  <td>The {@code org.jvnet.mimepull.TransferDecoder} property defines fully qualified name for a class that extends
+ * {@link org.jvnet.mimepull.TransferDecoder}. Its encodings take precedence over the built-in decoders and the ones
+ * found using {@link java.util.ServiceLoader}.</td>
  * </tr>
  *
  * <tr>
@@ -70,7 +87,15 @@
  *  <td>integer</td>
  *  <td>Defines the time to delay first execution of the clean up task run by {@code java.util.concurrent.ScheduledExecutorService}
  * obtained through {@link org.jvnet.mimepull.CleanUpExecutorFactory} and the delay between the termination of one execution
- * and the commencement of the next in seconds. The default is 10 seconds.</td>
+ * and the commencement of the next in seconds. The default is 10 seconds. Deprecated: it is no longer used.</td>
+ * </tr>
+ *
+ * <tr>
+ *  <td><a id="org.jvnet.mimepull.leakdetection">org.jvnet.mimepull.leakdetection</a></td>
+ *  <td>boolean</td>
+ *  <td>If set to {@code true}, the creation site of every {@link org.jvnet.mimepull.MIMEMessage} is recorded, and a warning with it
+ * is logged when a message is garbage collected without being closed. This helps to find the code that leaks temp files until the
+ * garbage collector runs, but it costs a stack trace per message. The default is false.</td>
  * </tr>
  *
  * <tr>
@@ -85,10 +110,14 @@
  * </table>
  *
  */
+// CleanUpExecutorFactory is deprecated, but still a service for compatibility
+@SuppressWarnings("deprecation")
 module org.jvnet.mimepull {
     requires java.logging;
 
     exports org.jvnet.mimepull;
 
+    uses org.jvnet.mimepull.AttachmentStore;
     uses org.jvnet.mimepull.CleanUpExecutorFactory;
+    uses org.jvnet.mimepull.TransferDecoder;
 }
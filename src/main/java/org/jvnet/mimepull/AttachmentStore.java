@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ServiceConfigurationError;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A service to store the content of the parts that don't fit in memory.
+ * By default, a spilled part is written to a temp file of its own (or to
+ * the shared segment files, see {@link MIMEConfig#setSpillSegmentSize(long)}).
+ * A store set on a {@link MIMEConfig}, or else found using ServiceLoader,
+ * replaces them, for e.g. to keep the content in a preallocated file or
+ * on a RAM disk.
+ *
+ * <p>
+ * {@link MIMEPart#moveTo(File)} copies the content of a part that is in
+ * a store.
+ */
+public abstract class AttachmentStore {
+
+    private static final Logger LOGGER = Logger.getLogger(AttachmentStore.class.getName());
+
+    /**
+     * Default constructor
+     */
+    protected AttachmentStore() {
+    }
+
+    /**
+     * Lookup AttachmentStore using ServiceLoader. A provider that cannot
+     * be loaded is logged, and the parts are spilled to temp files.
+     *
+     * @return AttachmentStore or null if not found
+     */
+    public static AttachmentStore newInstance() {
+        try {
+            return FactoryFinder.find(AttachmentStore.class);
+        } catch (ReflectiveOperationException | ServiceConfigurationError | RuntimeException | LinkageError e) {
+            if (LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.log(Level.WARNING, "Not using " + AttachmentStore.class.getName() + ", using temp files", e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns a store that keeps each part in a temp file of its own,
+     * which is deleted when the part is closed.
+     *
+     * @param dir directory of the temp files, null for the default temp directory
+     * @return local file system store
+     */
+    public static AttachmentStore newFileStore(File dir) {
+        return new FileAttachmentStore(dir);
+    }
+
+    /**
+     * Returns a store that keeps the parts on the heap, for e.g. for tests.
+     *
+     * @return in-memory store
+     */
+    public static AttachmentStore newMemoryStore() {
+        return new MemoryAttachmentStore();
+    }
+
+    /**
+     * Creates the storage of a part, when the part is spilled.
+     *
+     * @return empty storage
+     * @throws IOException if the storage cannot be created
+     */
+    public abstract Storage create() throws IOException;
+
+    /**
+     * Content of a part. The parser writes the chunks one after the other,
+     * while the part may be read by other threads. The writes don't
+     * overlap, and a region is read only after it is written, but both
+     * may happen at the same time.
+     */
+    public interface Storage {
+
+        /**
+         * Writes all the remaining bytes of the buffer.
+         *
+         * @param position where the bytes are written
+         * @param src bytes to write
+         * @throws IOException if the bytes cannot be written
+         */
+        void write(long position, ByteBuffer src) throws IOException;
+
+        /**
+         * Reads bytes until the buffer is full.
+         *
+         * @param position where the bytes are read
+         * @param dst buffer to fill
+         * @throws IOException if the bytes cannot be read
+         */
+        void read(long position, ByteBuffer dst) throws IOException;
+
+        /**
+         * Releases the content. It is called once, when the part is
+         * closed or garbage collected, after the writes are done.
+         *
+         * @throws IOException if the content cannot be released
+         */
+        void close() throws IOException;
+    }
+}
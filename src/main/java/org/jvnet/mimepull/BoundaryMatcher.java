@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the MIME boundary in the parser buffer. An instance is created
+ * for one boundary and may keep pre computed tables for it.
+ *
+ * @see BoundarySearch
+ */
+interface BoundaryMatcher {
+
+    /**
+     * Finds the first occurrence of the boundary in the given buffer.
+     *
+     * @param mybuf boundary to be searched in this mybuf
+     * @param off start index in mybuf
+     * @param len end index (exclusive) in mybuf
+     *
+     * @return -1 if there is no match or index where the match starts
+     */
+    int match(byte[] mybuf, int off, int len);
+
+    /**
+     * Finds the first occurrence of the boundary in the given buffer, for
+     * e.g. a direct buffer the message is read into. The indexes are absolute,
+     * the position and the limit of the buffer are not used.
+     *
+     * @param mybuf boundary to be searched in this mybuf
+     * @param off start index in mybuf
+     * @param len end index (exclusive) in mybuf
+     *
+     * @return -1 if there is no match or index where the match starts
+     */
+    int match(ByteBuffer mybuf, int off, int len);
+
+}
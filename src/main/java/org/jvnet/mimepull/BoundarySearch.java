@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+/**
+ * Algorithms available to search the MIME boundary in the message.
+ * All of them give the same results, they only differ in the speed
+ * on the various kinds of content.
+ *
+ * @see MIMEConfig#setBoundarySearch(BoundarySearch)
+ */
+public enum BoundarySearch {
+
+    /**
+     * Boyer-Moore search with bad character and good suffix shifts.
+     * This is the default.
+     */
+    BOYER_MOORE {
+        @Override
+        BoundaryMatcher newMatcher(byte[] boundary) {
+            return new BoyerMooreMatcher(boundary);
+        }
+    },
+
+    /**
+     * Boyer-Moore-Horspool search with a bad character shift only.
+     * Cheap to set up, fast on binary content.
+     */
+    HORSPOOL {
+        @Override
+        BoundaryMatcher newMatcher(byte[] boundary) {
+            return new HorspoolMatcher(boundary);
+        }
+    },
+
+    /**
+     * Word-at-a-time (SWAR) scan looking at 8 bytes at once for the
+     * last boundary byte. Fast on content where that byte is rare,
+     * for e.g. base64 encoded parts.
+     */
+    SWAR {
+        @Override
+        BoundaryMatcher newMatcher(byte[] boundary) {
+            return new SwarMatcher(boundary);
+        }
+    },
+
+    /**
+     * Two-Way search (Crochemore-Perrin). Linear in the worst case
+     * and needs only constant extra space.
+     */
+    TWO_WAY {
+        @Override
+        BoundaryMatcher newMatcher(byte[] boundary) {
+            return new TwoWayMatcher(boundary);
+        }
+    },
+
+    /**
+     * SIMD search with the Vector API, 32 or 64 bytes at a time depending
+     * on the hardware. Needs JDK 21 or later and the {@code jdk.incubator.vector}
+     * module added at runtime ({@code --add-modules jdk.incubator.vector}),
+     * otherwise {@link #BOYER_MOORE} is used.
+     */
+    VECTOR {
+        @Override
+        BoundaryMatcher newMatcher(byte[] boundary) {
+            BoundaryMatcher matcher = VectorSupport.newMatcher(boundary);
+            return (matcher != null) ? matcher : BOYER_MOORE.newMatcher(boundary);
+        }
+    };
+
+    /**
+     * Creates a matcher for the given boundary.
+     *
+     * @param boundary boundary bytes including the leading "--"
+     * @return matcher
+     */
+    abstract BoundaryMatcher newMatcher(byte[] boundary);
+
+}
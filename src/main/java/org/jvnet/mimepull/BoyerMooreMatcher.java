@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 1997, 2022 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Boyer-Moore search method. Copied from java.util.regex.Pattern.java
+ *
+ * @author Jitendra Kotamraju
+ */
+final class BoyerMooreMatcher implements BoundaryMatcher {
+
+    private final byte[] bndbytes;
+    private final int[] bcs = new int[256]; // BnM algo: Bad Character Shift table
+    private final int[] gss;                // BnM algo : Good Suffix Shift table
+
+    BoyerMooreMatcher(byte[] bndbytes) {
+        this.bndbytes = bndbytes;
+        gss = new int[bndbytes.length];
+        compileBoundaryPattern();
+    }
+
+    /**
+     * Pre calculates arrays needed to generate the bad character
+     * shift and the good suffix shift. All the eight bits are used
+     * for the bad character shift, so binary content does not alias
+     * to the ASCII range of the boundary.
+     */
+    private void compileBoundaryPattern() {
+        int i, j;
+
+        // Precalculate part of the bad character shift
+        // It is a table for where in the pattern each
+        // byte value occurs
+        for (i = 0; i < bndbytes.length; i++) {
+            bcs[bndbytes[i]&0xFF] = i + 1;
+        }
+
+        // Precalculate the good suffix shift
+        // i is the shift amount being considered
+NEXT:   for (i = bndbytes.length; i > 0; i--) {
+            // j is the beginning index of suffix being considered
+            for (j = bndbytes.length - 1; j >= i; j--) {
+                // Testing for good suffix
+                if (bndbytes[j] == bndbytes[j-i]) {
+                    // src[j..len] is a good suffix
+                    gss[j-1] = i;
+                } else {
+                    // No match. The array has already been
+                    // filled up with correct values before.
+                    continue NEXT;
+                }
+            }
+            // This fills up the remaining of optoSft
+            // any suffix can not have larger shift amount
+            // then its sub-suffix. Why???
+            while (j > 0) {
+                gss[--j] = i;
+            }
+        }
+        // Set the guard value because of unicode compression
+        gss[bndbytes.length -1] = 1;
+    }
+
+    /**
+     * Finds the boundary in the given buffer using Boyer-Moore algo.
+     * Copied from java.util.regex.Pattern.java
+     */
+    @Override
+    public int match(byte[] mybuf, int off, int len) {
+        int last = len - bndbytes.length;
+
+        // Loop over all possible match positions in text
+NEXT:   while (off <= last) {
+            // Loop over pattern from right to left
+            for (int j = bndbytes.length - 1; j >= 0; j--) {
+                byte ch = mybuf[off+j];
+                if (ch != bndbytes[j]) {
+                    // Shift search to the right by the maximum of the
+                    // bad character shift and the good suffix shift
+                    off += Math.max(j + 1 - bcs[ch&0xFF], gss[j]);
+                    continue NEXT;
+                }
+            }
+            // Entire pattern matched starting at off
+            return off;
+        }
+        return -1;
+    }
+
+    @Override
+    public int match(ByteBuffer mybuf, int off, int len) {
+        int last = len - bndbytes.length;
+
+NEXT:   while (off <= last) {
+            for (int j = bndbytes.length - 1; j >= 0; j--) {
+                byte ch = mybuf.get(off+j);
+                if (ch != bndbytes[j]) {
+                    off += Math.max(j + 1 - bcs[ch&0xFF], gss[j]);
+                    continue NEXT;
+                }
+            }
+            return off;
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of parser buffers. All pooled buffers have the same
+ * length, so a buffer handed out by {@link #acquire} can be used for
+ * any message whose parser capacity does not exceed {@link #getBufferSize}.
+ * Requests for bigger buffers and buffers of a foreign size are simply
+ * not pooled.
+ */
+final class BufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> free;
+
+    BufferPool(int bufferSize, int maxBuffers) {
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(maxBuffers);
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns a buffer of at least {@code min} bytes. The content of
+     * a recycled buffer is undefined.
+     *
+     * @param min minimum length of the buffer
+     * @return a pooled buffer if one is available, otherwise a new one
+     */
+    byte[] acquire(int min) {
+        if (min > bufferSize) {
+            return new byte[min];
+        }
+        byte[] buf = free.poll();
+        return (buf != null) ? buf : new byte[bufferSize];
+    }
+
+    /**
+     * Gives the buffer back to the pool. The caller must not access the
+     * buffer after this call. If the pool is full, the buffer is left
+     * to the garbage collector.
+     *
+     * @param buf buffer that is no longer used
+     */
+    void release(byte[] buf) {
+        if (buf != null && buf.length == bufferSize) {
+            free.offer(buf);
+        }
+    }
+
+}
@@ -21,16 +21,13 @@ import java.io.IOException;
  */
 final class ChunkInputStream extends InputStream {
     Chunk current;
-    int offset;
-    int len;
+    final ChunkWindow window = new ChunkWindow();
     final MIMEMessage msg;
     final MIMEPart part;
-    byte[] buf;
 
     public ChunkInputStream(MIMEMessage msg, MIMEPart part, Chunk startPos) {
         this.current = startPos;
-        len = current.data.size();
-        buf = current.data.read();
+        window.load(current.data);
         this.msg = msg;
         this.part = part;
     }
@@ -40,10 +37,7 @@ final class ChunkInputStream extends InputStream {
         if (!fetch()) {
             return -1;
         }
-
-        sz = Math.min(sz, len-offset);
-        System.arraycopy(buf,offset,b,off,sz);
-        return sz;
+        return window.read(b, off, sz);
     }
 
     @Override
@@ -51,7 +45,7 @@ final class ChunkInputStream extends InputStream {
         if (!fetch()) {
             return -1;
         }
-        return (buf[offset++] & 0xff);
+        return window.read();
     }
 
     /**
@@ -61,7 +55,7 @@ final class ChunkInputStream extends InputStream {
         if (current == null) {
             throw new IllegalStateException("Stream already closed");
         }
-        while(offset==len) {
+        while(!window.hasRemaining()) {
             while(!part.parsed && current.next == null) {
                 msg.makeProgress();
             }
@@ -70,9 +64,7 @@ final class ChunkInputStream extends InputStream {
             if (current == null) {
                 return false;
             }
-            this.offset = 0;
-            this.buf = current.data.read();
-            this.len = current.data.size();
+            window.load(current.data);
         }
         return true;
     }
@@ -80,6 +72,7 @@ final class ChunkInputStream extends InputStream {
     @Override
     public void close() throws IOException {
         super.close();
+        window.close();
         current = null;
     }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.util.zip.Inflater;
+
+/**
+ * Read position of a stream in the current chunk. The chunks that are
+ * arrays in memory are read in place. The others (for e.g. in a file)
+ * are read in a scratch array that is reused for all the chunks of the
+ * stream, or straight into the reader's array for big reads, so reading
+ * them doesn't allocate. A compressed chunk is inflated once, in the
+ * scratch array, with an inflater that is reused for all the chunks.
+ */
+final class ChunkWindow {
+    private static final int SCRATCH_SIZE = 8192;
+
+    // bytes of the chunk that can be read in place
+    private byte[] buf;
+    private int offset;
+    private int len;
+
+    // rest of a chunk that is not an array in memory
+    private Data data;
+    private int position;
+    private int size;
+    private byte[] scratch;
+    private Inflater inflater;
+
+    /**
+     * Moves to the next chunk.
+     *
+     * @param data data of the chunk
+     */
+    void load(Data data) {
+        this.data = data;
+        if (data instanceof CompressedData) {
+            int n = data.size();
+            if (scratch == null || scratch.length < n) {
+                scratch = new byte[Math.max(n, SCRATCH_SIZE)];
+            }
+            if (inflater == null) {
+                inflater = new Inflater();
+            }
+            ((CompressedData) data).inflate(inflater, scratch, 0);
+            buf = scratch;
+            offset = 0;
+            len = n;
+            position = size = 0;
+        } else if (data.hasArray()) {
+            buf = data.read();
+            offset = data.offset();
+            len = offset + data.size();
+            position = size = 0;
+        } else {
+            offset = len = 0;
+            position = 0;
+            size = data.size();
+        }
+    }
+
+    /**
+     * @return true if the chunk has more bytes to read
+     */
+    boolean hasRemaining() {
+        return offset < len || position < size;
+    }
+
+    /**
+     * Reads bytes of the chunk, the chunk must have some.
+     *
+     * @param b destination array
+     * @param off start offset in the array
+     * @param sz maximum no of bytes
+     * @return no of bytes read
+     */
+    int read(byte[] b, int off, int sz) {
+        if (offset == len) {
+            if (sz >= SCRATCH_SIZE) {
+                sz = Math.min(sz, size - position);
+                data.read(position, b, off, sz);
+                position += sz;
+                return sz;
+            }
+            fill();
+        }
+        sz = Math.min(sz, len - offset);
+        System.arraycopy(buf, offset, b, off, sz);
+        offset += sz;
+        return sz;
+    }
+
+    /**
+     * Reads a byte of the chunk, the chunk must have some.
+     *
+     * @return the byte
+     */
+    int read() {
+        if (offset == len) {
+            fill();
+        }
+        return buf[offset++] & 0xff;
+    }
+
+    /**
+     * Releases the inflater, if any.
+     */
+    void close() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    private void fill() {
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
+        }
+        int n = Math.min(scratch.length, size - position);
+        data.read(position, scratch, 0, n);
+        position += n;
+        buf = scratch;
+        offset = 0;
+        len = n;
+    }
+
+}
@@ -16,7 +16,11 @@ import java.util.logging.Logger;
 
 /**
  * A service to clean up created resources.
+ *
+ * @deprecated The temp files are now released by a {@link java.lang.ref.Cleaner}
+ * as soon as their parts are unreachable, so the executor is no longer used.
  */
+@Deprecated
 public abstract class CleanUpExecutorFactory {
 
     private static final Logger LOGGER = Logger.getLogger(CleanUpExecutorFactory.class.getName());
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps the Part's partial content data deflated, in memory or, once the
+ * part is spilled, in its temp file. The chunk is inflated when it is read.
+ */
+final class CompressedData implements Data {
+    private final int len;
+    private final int stored;
+    private final MIMEConfig config;
+
+    // deflated bytes in memory, null if the chunk is in the file
+    private volatile byte[] data;
+    private final DataFile file;
+    private final long pointer;
+
+    private CompressedData(int len, byte[] data, MIMEConfig config) {
+        this.len = len;
+        this.stored = data.length;
+        this.data = data;
+        this.config = config;
+        this.file = null;
+        this.pointer = 0;
+    }
+
+    private CompressedData(CompressedData mem, DataFile file, long pointer) {
+        this.len = mem.len;
+        this.stored = mem.stored;
+        this.config = mem.config;
+        this.data = null;
+        this.file = file;
+        this.pointer = pointer;
+    }
+
+    /**
+     * Deflates a parser chunk.
+     *
+     * @param buf parser chunk
+     * @param deflater deflater of the part
+     * @param scratch array for the deflated bytes, as big as the chunk
+     * @param config configuration of the message
+     * @return the compressed data, or null if the chunk doesn't get smaller
+     */
+    static CompressedData compress(ByteBuffer buf, Deflater deflater, byte[] scratch, MIMEConfig config) {
+        int len = buf.remaining();
+        deflater.reset();
+        deflater.setInput(buf.duplicate());
+        deflater.finish();
+        int n = 0;
+        while (!deflater.finished() && n < len) {
+            n += deflater.deflate(scratch, n, len - n);
+        }
+        if (!deflater.finished() || n >= len) {
+            return null;
+        }
+        return new CompressedData(len, Arrays.copyOf(scratch, n), config);
+    }
+
+    /**
+     * Moves this chunk to the file of the part, as it is.
+     *
+     * @param file file of the part
+     * @param pointer where the deflated bytes are written
+     * @return data of the chunk in the file
+     */
+    CompressedData spilled(DataFile file, long pointer) {
+        return new CompressedData(this, file, pointer);
+    }
+
+    /**
+     * @return true if the deflated bytes are in memory
+     */
+    boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * @return no of deflated bytes
+     */
+    int storedSize() {
+        return stored;
+    }
+
+    /**
+     * @return the deflated bytes, to write them to the file of the part
+     */
+    ByteBuffer stored() {
+        return ByteBuffer.wrap(deflated());
+    }
+
+    // size of the chunk given by the parser
+    @Override
+    public int size() {
+        return len;
+    }
+
+    @Override
+    public byte[] read() {
+        byte[] buf = new byte[len];
+        inflate(buf, 0);
+        return buf;
+    }
+
+    /*
+     * The part streams don't come here, ChunkWindow inflates the whole
+     * chunk once with the inflater of the stream
+     */
+    @Override
+    public void read(int position, byte[] dst, int off, int length) {
+        if (position == 0 && length == len) {
+            inflate(dst, off);
+        } else {
+            System.arraycopy(read(), position, dst, off, length);
+        }
+    }
+
+    @Override
+    public boolean hasArray() {
+        return false;
+    }
+
+    @Override
+    public int offset() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        data = null;
+    }
+
+    @Override
+    public ByteBuffer buffer() {
+        return ByteBuffer.wrap(read());
+    }
+
+    @Override
+    public Data createNext(DataHead dataHead, ByteBuffer buf) {
+        if (!isInMemory()) {
+            return dataHead.newFileData(buf);
+        }
+        if (!config.isOnlyMemory() && dataHead.inMemory >= config.memoryThreshold) {
+            dataHead.spill();
+            return dataHead.newFileData(buf);
+        }
+        return dataHead.newMemoryData(buf);
+    }
+
+    private byte[] deflated() {
+        if (file != null) {
+            byte[] buf = new byte[stored];
+            file.read(pointer, buf, 0, stored);
+            return buf;
+        }
+        byte[] buf = data;
+        if (buf == null) {
+            throw new IllegalStateException("Part content is released");
+        }
+        return buf;
+    }
+
+    private void inflate(byte[] dst, int off) {
+        Inflater inflater = new Inflater();
+        try {
+            inflate(inflater, dst, off);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Inflates the whole chunk.
+     *
+     * @param inflater inflater to reuse, it is reset first
+     * @param dst destination array, with room for {@link #size()} bytes
+     * @param off start offset in the array
+     */
+    void inflate(Inflater inflater, byte[] dst, int off) {
+        inflater.reset();
+        try {
+            inflater.setInput(deflated());
+            int n = 0;
+            while (n < len) {
+                int r = inflater.inflate(dst, off + n, len - n);
+                if (r == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new MIMEParsingException("Truncated compressed chunk");
+                }
+                n += r;
+            }
+        } catch (DataFormatException e) {
+            throw new MIMEParsingException(e);
+        }
+    }
+}
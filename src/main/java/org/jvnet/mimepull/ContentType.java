@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parsed value of a Content-Type header (RFC 2045): the media type and
+ * its parameters. The type, the subtype and the parameter names are case
+ * insensitive and are kept in lower case. The parameter values are kept
+ * as they are, without the quotes.
+ *
+ * <pre>
+ * for e.g.:
+ * {@code
+ *
+ * ContentType ct = ContentType.parse("multipart/related; type=\"application/xop+xml\"; boundary=uuid");
+ * ct.getBaseType();               // multipart/related
+ * ct.getParameter("boundary");    // uuid
+ * }</pre>
+ */
+public final class ContentType {
+
+    private final String value;
+    private final String primaryType;
+    private final String subType;
+    private final Map<String, String> parameters;
+
+    private ContentType(String value, String primaryType, String subType, Map<String, String> parameters) {
+        this.value = value;
+        this.primaryType = primaryType;
+        this.subType = subType;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Parses a Content-Type header value.
+     *
+     * @param value Content-Type header value
+     * @return the parsed content type
+     * @throws MIMEParsingException if the value doesn't have a type and a subtype
+     */
+    public static ContentType parse(String value) {
+        int len = value.length();
+        int slash = value.indexOf('/');
+        int semi = value.indexOf(';');
+        if (semi == -1) {
+            semi = len;
+        }
+        if (slash == -1 || slash > semi) {
+            throw new MIMEParsingException("Invalid Content-Type: " + value);
+        }
+        String primaryType = value.substring(0, slash).trim().toLowerCase(Locale.ROOT);
+        String subType = value.substring(slash + 1, semi).trim().toLowerCase(Locale.ROOT);
+        if (primaryType.isEmpty() || subType.isEmpty()) {
+            throw new MIMEParsingException("Invalid Content-Type: " + value);
+        }
+
+        Map<String, String> parameters = new LinkedHashMap<>();
+        int i = semi;
+        while (i < len) {
+            // at ';'
+            int eq = i + 1;
+            while (eq < len && value.charAt(eq) != '=' && value.charAt(eq) != ';') {
+                eq++;
+            }
+            if (eq == len || value.charAt(eq) == ';') {
+                i = eq;     // parameter without a value, ignore it
+                continue;
+            }
+            String name = value.substring(i + 1, eq).trim().toLowerCase(Locale.ROOT);
+            int j = eq + 1;
+            while (j < len && Character.isWhitespace(value.charAt(j))) {
+                j++;
+            }
+            String paramValue;
+            if (j < len && value.charAt(j) == '"') {
+                StringBuilder sb = new StringBuilder();
+                for (j++; j < len && value.charAt(j) != '"'; j++) {
+                    char c = value.charAt(j);
+                    if (c == '\\' && j + 1 < len) {
+                        c = value.charAt(++j);
+                    }
+                    sb.append(c);
+                }
+                paramValue = sb.toString();
+                i = value.indexOf(';', j);
+            } else {
+                i = value.indexOf(';', j);
+                paramValue = value.substring(j, (i == -1) ? len : i).trim();
+            }
+            if (i == -1) {
+                i = len;
+            }
+            if (!name.isEmpty()) {
+                parameters.putIfAbsent(name, paramValue);
+            }
+        }
+        return new ContentType(value, primaryType, subType,
+                parameters.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(parameters));
+    }
+
+    /**
+     * Returns the primary type, for e.g. {@code multipart}.
+     *
+     * @return primary type in lower case
+     */
+    public String getPrimaryType() {
+        return primaryType;
+    }
+
+    /**
+     * Returns the subtype, for e.g. {@code related}.
+     *
+     * @return subtype in lower case
+     */
+    public String getSubType() {
+        return subType;
+    }
+
+    /**
+     * Returns the media type without the parameters, for e.g.
+     * {@code multipart/related}.
+     *
+     * @return primary type and subtype in lower case
+     */
+    public String getBaseType() {
+        return primaryType + '/' + subType;
+    }
+
+    /**
+     * Checks if this content type has the given media type.
+     *
+     * @param baseType media type, for e.g. {@code text/xml}
+     * @return true if the type and the subtype are the same, ignoring case
+     */
+    public boolean match(String baseType) {
+        int slash = baseType.indexOf('/');
+        return slash == primaryType.length()
+                && baseType.regionMatches(true, 0, primaryType, 0, slash)
+                && baseType.regionMatches(true, slash + 1, subType, 0, subType.length())
+                && baseType.length() == slash + 1 + subType.length();
+    }
+
+    /**
+     * Returns the value of a parameter.
+     *
+     * @param name parameter name, case insensitive
+     * @return the value without quotes, or null if there is no such parameter
+     */
+    public String getParameter(String name) {
+        return parameters.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns all the parameters, in the order of the header.
+     *
+     * @return read-only map of the lower case parameter names to their values
+     */
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Returns the header value this content type was parsed from.
+     *
+     * @return Content-Type header value
+     */
+    @Override
+    public String toString() {
+        return value;
+    }
+}
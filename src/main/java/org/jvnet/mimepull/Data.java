@@ -31,18 +31,49 @@ interface Data {
      *
      * @return a byte array which contains {#size()} bytes. The returned
      *         array may be larger than {#size()} bytes and contains data
-     *         from offset 0.
+     *         from {@link #offset()}.
      */
     byte[] read();
 
     /**
-     * Write this partial data to a file
+     * Copies part of the data into the given array. Unlike {@link #read()},
+     * it doesn't allocate, for e.g. data in a file is read straight into
+     * the array.
      *
-     * @param file to which the data needs to be written
-     * @return file pointer before the write operation(at which the data is
-     *         written from)
+     * @param position start of the bytes in this data
+     * @param dst destination array
+     * @param off start offset in the array
+     * @param len no of bytes to copy
      */
-    long writeTo(DataFile file);
+    void read(int position, byte[] dst, int off, int len);
+
+    /**
+     * Checks if {@link #read()} returns the stored array without copying it.
+     *
+     * @return false if {@link #read()} allocates a new array
+     */
+    boolean hasArray();
+
+    /**
+     * Start of the data in the array returned by {@link #read()}
+     *
+     * @return offset of the data, 0 unless the data is a slice of a bigger array
+     */
+    int offset();
+
+    /**
+     * Return this partial data as a buffer, so that it can be written to
+     * a file along with other chunks.
+     *
+     * @return a buffer whose remaining bytes are the data
+     */
+    ByteBuffer buffer();
+
+    /**
+     * Releases the storage held by this partial data. The data must not
+     * be read after this call.
+     */
+    void close();
 
     /**
      * Factory method to create a Data. The implementation could
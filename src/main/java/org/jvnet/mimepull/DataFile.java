@@ -11,6 +11,10 @@
 package org.jvnet.mimepull;
 
 import java.io.*;
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Use {@link RandomAccessFile} for concurrent access of read
@@ -20,49 +24,177 @@ import java.io.*;
  * @author Jitendra Kotamraju
  */
 final class DataFile {
-    private WeakDataFile weak;
-    private long writePointer;
+    private static final Logger LOGGER = Logger.getLogger(DataFile.class.getName());
+
+    private final WeakDataFile weak;
+
+    // write-behind state, guarded by this
+    private int pending;                // queued and running writes
+    private boolean closeRequested;     // closed when the pending writes are done
 
     DataFile(File file) {
-        writePointer=0;
         weak = new WeakDataFile(this, file);
     }
 
+    /*
+     * Part content is stored in extents of the shared segment files
+     */
+    DataFile(SpillStore store) {
+        weak = new SegmentDataFile(this, store);
+    }
+
+    /*
+     * Part content is in the storage of an attachment store
+     */
+    DataFile(AttachmentStore.Storage storage) {
+        weak = new StoreDataFile(this, storage);
+    }
+
     /**
+     * Checks if the content is in a file of its own, which can be renamed.
      *
+     * @return false if the file is shared with other parts, or is not a file
+     */
+    boolean canRename() {
+        return weak.canRename();
+    }
+
+    /**
+     * Closes the file. If some writes are still pending, the file is
+     * closed by the last of them, so their regions are not reused while
+     * they are written.
      */
     void close() {
+        synchronized (this) {
+            closeRequested = true;
+            if (pending > 0) {
+                return;
+            }
+        }
         weak.close();
     }
 
     /**
-     * Read data from the given file pointer position.
+     * Read data from the given file pointer position. The data must be
+     * already written, concurrent reads of it don't block each other.
      *
      * @param pointer read position
      * @param buf that needs to be filled
      * @param offset the start offset of the data.
      * @param length of data that needs to be read
      */
-    synchronized void read(long pointer, byte[] buf, int offset, int length ) {
-        weak.read(pointer, buf, offset, length);
+    void read(long pointer, byte[] buf, int offset, int length ) {
+        try {
+            weak.read(pointer, buf, offset, length);
+        } finally {
+            // the storage is cleaned up once this is unreachable
+            Reference.reachabilityFence(this);
+        }
     }
 
     void renameTo(File f) {
+        awaitWrites();
         weak.renameTo(f);
     }
 
     /**
-     * Write data to the file
+     * Writes the data on the writer's executor. The region is reserved
+     * right away, the caller keeps the data readable until it is persisted.
      *
      * @param data that needs to written to a file
      * @param offset start offset in the data
      * @param length no bytes to write
+     * @param writer background writer
+     * @param persisted called once the data is written
+     * @return file pointer at which the data is written
+     */
+    long writeBehind(byte[] data, int offset, int length, SpillWriter writer, Runnable persisted) {
+        long temp = weak.reserve(length);
+        synchronized (this) {
+            pending++;
+        }
+        writer.execute(() -> {
+            try {
+                if (!isCloseRequested()) {
+                    weak.writeTo(temp, data, offset, length);
+                    persisted.run();
+                }
+            } catch (MIMEParsingException e) {
+                // the data stays in memory
+                if (LOGGER.isLoggable(Level.WARNING)) {
+                    LOGGER.log(Level.WARNING, "Cannot write part content to a temp file", e);
+                }
+            } finally {
+                writeDone();
+            }
+        });
+        return temp;
+    }
+
+    private synchronized boolean isCloseRequested() {
+        return closeRequested;
+    }
+
+    private void writeDone() {
+        boolean close;
+        synchronized (this) {
+            close = --pending == 0 && closeRequested;
+            notifyAll();
+        }
+        if (close) {
+            weak.close();
+        }
+    }
+
+    private synchronized void awaitWrites() {
+        boolean interrupted = false;
+        while (pending > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write data to the file. The region is reserved first, so the
+     * data is written without holding a lock.
+     *
+     * @param data that needs to written to a file
+     * @param offset start offset in the data
+     * @param length no bytes to write
+     * @return file pointer before the write operation(or at which the
+     *         data is written)
+     */
+    long writeTo(byte[] data, int offset, int length) {
+        long temp = weak.reserve(length);
+        try {
+            weak.writeTo(temp, data, offset, length);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+        return temp;
+    }
+
+    /**
+     * Write many chunks to the file with one gathering write. They are
+     * written one after the other, in a single region.
+     *
+     * @param data remaining bytes of the buffers need to be written to a file
      * @return file pointer before the write operation(or at which the
      *         data is written)
      */
-    synchronized long writeTo(byte[] data, int offset, int length) {
-        long temp = writePointer;
-        writePointer = weak.writeTo(writePointer, data, offset, length);
+    long writeTo(ByteBuffer[] data) {
+        long temp = weak.reserve(Math.toIntExact(WeakDataFile.remaining(data)));
+        try {
+            weak.writeTo(temp, data);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
         return temp;
     }
 
@@ -12,6 +12,13 @@ package org.jvnet.mimepull;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 /**
  * Represents an attachment part in a MIME message. MIME message parsing is done
@@ -24,9 +31,14 @@ import java.nio.ByteBuffer;
  * @author Jitendra Kotamraju
  */
 final class DataHead {
+    private static final Logger LOGGER = Logger.getLogger(DataHead.class.getName());
+    // default to false to avoid memory leak through java.io.DeleteOnExitHook.files
+    static final boolean DELETE_ON_EXIT = Boolean.getBoolean("org.jvnet.mimepull.deletetemponexit");
 
     /**
-     * Linked list to keep the part's content
+     * Linked list to keep the part's content. After readOnce(), head is
+     * the first chunk that is not read yet, so closing the part releases
+     * the rest of the content.
      */
     volatile Chunk head, tail;
 
@@ -37,9 +49,17 @@ final class DataHead {
 
     private final MIMEPart part;
 
-    boolean readOnce;
+    volatile boolean readOnce;
     volatile long inMemory;
 
+    // in-memory bytes accounted in the memory budget, guarded by the budget
+    long budgeted;
+
+    // compression of the chunks beyond the compression threshold, guarded by this
+    private Deflater deflater;
+    private byte[] deflated;
+    private boolean compressed;
+
     /**
      * Used only for debugging. This records where readOnce() is called.
      */
@@ -50,13 +70,216 @@ final class DataHead {
     }
 
     void addBody(ByteBuffer buf) {
+        Data added;
         synchronized(this) {
-            inMemory += buf.limit();
+            inMemory += buf.remaining();
+            if (tail != null) {
+                tail = tail.createNext(this, buf);
+            } else if (part.msg.isView()) {
+                head = tail = new Chunk(new ViewData(buf));
+            } else {
+                head = tail = new Chunk(newMemoryData(buf));
+            }
+            added = tail.data;
+            // a compressed chunk takes less memory
+            inMemory -= added.size() - storedSize(added);
         }
-        if (tail != null) {
-            tail = tail.createNext(this, buf);
-        } else {
-            head = tail = new Chunk(new MemoryData(buf, part.msg.config));
+        // outside of the lock, the budget may spill other parts
+        MemoryBudget budget = part.msg.config.getMemoryBudget();
+        if (budget != null && isInMemory(added)) {
+            budget.charge(this, storedSize(added));
+        }
+    }
+
+    /**
+     * Creates the data of a parser chunk that stays in memory. Beyond the
+     * compression threshold, the chunk is deflated if it gets smaller.
+     *
+     * @param buf parser chunk
+     * @return memory data
+     */
+    synchronized Data newMemoryData(ByteBuffer buf) {
+        MIMEConfig config = part.msg.config;
+        long threshold = config.getCompressionThreshold();
+        if (threshold != -1L && inMemory >= threshold) {
+            if (deflater == null) {
+                deflater = new Deflater(Deflater.BEST_SPEED);
+            }
+            if (deflated == null || deflated.length < buf.remaining()) {
+                deflated = new byte[buf.remaining()];
+            }
+            Data data = CompressedData.compress(buf, deflater, deflated, config);
+            if (data != null) {
+                compressed = true;
+                recycle(buf);
+                return data;
+            }
+        }
+        if (config.getDirectBufferPool() != null) {
+            Data data = new DirectData(buf, config);
+            recycle(buf);
+            return data;
+        }
+        return new MemoryData(onHeap(buf), config);
+    }
+
+    /**
+     * Returns a parser chunk that can be kept on the heap. A chunk without
+     * an array is a slice of the parser's direct buffer, which is reused
+     * for the next chunks, so it is copied.
+     *
+     * @param buf parser chunk
+     * @return the chunk, or a copy of it in a (pooled) array
+     */
+    private ByteBuffer onHeap(ByteBuffer buf) {
+        if (buf.hasArray()) {
+            return buf;
+        }
+        int len = buf.remaining();
+        BufferPool pool = part.msg.config.getBufferPool();
+        byte[] copy = (pool != null) ? pool.acquire(len) : new byte[len];
+        buf.duplicate().get(copy, 0, len);
+        return ByteBuffer.wrap(copy, 0, len);
+    }
+
+    /**
+     * Moves the in-memory content to a temp file. The next chunks are
+     * added to the file too.
+     */
+    synchronized void spill() {
+        try {
+            if (tail == null) {
+                return;         // closed
+            }
+            if (dataFile == null) {
+                dataFile = createDataFile(part.msg.config);
+            }
+            SpillWriter writer = part.msg.config.getSpillWriter();
+            endCompression();
+            List<Chunk> chunks = new ArrayList<>();
+            // the chunks of a part that is read once stay where they are until they are read
+            for (Chunk c = readOnce ? null : head; c != null; c = c.next) {
+                // the replaced heap data is not released, a reader may still have it
+                Data data = c.data;
+                if (writer != null && data instanceof MemoryData) {
+                    c.data = new PendingFileData(dataFile, data.read(), data.size(), writer);
+                } else if (isInMemory(data)) {
+                    chunks.add(c);
+                }
+            }
+            if (!chunks.isEmpty()) {
+                // one gathering write for all the chunks
+                ByteBuffer[] srcs = new ByteBuffer[chunks.size()];
+                for (int i = 0; i < srcs.length; i++) {
+                    // compressed chunks are written as they are
+                    Data data = chunks.get(i).data;
+                    srcs[i] = (data instanceof CompressedData) ? ((CompressedData) data).stored() : data.buffer();
+                }
+                long pointer = dataFile.writeTo(srcs);
+                for (Chunk c : chunks) {
+                    Data data = c.data;
+                    int size = storedSize(data);
+                    if (data instanceof CompressedData) {
+                        c.data = ((CompressedData) data).spilled(dataFile, pointer);
+                    } else {
+                        c.data = new FileData(dataFile, pointer, size);
+                        if (data instanceof DirectData) {
+                            ((DirectData) data).moveTo(c.data);
+                        }
+                    }
+                    pointer += size;
+                }
+            }
+        } finally {
+            releaseBudget();
+        }
+    }
+
+    /**
+     * Creates the data of a parser chunk once the part is spilled. If the
+     * config has a spill writer, the chunk is written in the background.
+     *
+     * @param buf parser chunk
+     * @return file data
+     */
+    Data newFileData(ByteBuffer buf) {
+        SpillWriter writer = part.msg.config.getSpillWriter();
+        if (writer != null) {
+            ByteBuffer heap = onHeap(buf);
+            return new PendingFileData(dataFile, heap.array(), heap.limit(), writer);
+        }
+        Data next = new FileData(dataFile, buf);
+        recycle(buf);
+        return next;
+    }
+
+    /**
+     * Checks if the budget can spill this part. A part that is read once
+     * releases its memory as it is read.
+     *
+     * @return true if the content can be moved to a temp file
+     */
+    boolean isSpillable() {
+        return !readOnce && head != null && !part.msg.config.isOnlyMemory();
+    }
+
+    private static boolean isInMemory(Data data) {
+        return data instanceof MemoryData || data instanceof DirectData
+                || (data instanceof CompressedData && ((CompressedData) data).isInMemory());
+    }
+
+    /*
+     * No of bytes stored for the chunk, less than its size if it is compressed
+     */
+    private static int storedSize(Data data) {
+        return (data instanceof CompressedData) ? ((CompressedData) data).storedSize() : data.size();
+    }
+
+    private void endCompression() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+            deflated = null;
+        }
+    }
+
+    private void releaseBudget() {
+        MemoryBudget budget = part.msg.config.getMemoryBudget();
+        if (budget != null) {
+            budget.release(this);
+        }
+    }
+
+    private static DataFile createDataFile(MIMEConfig config) {
+        AttachmentStore attachmentStore = config.getAttachmentStore();
+        if (attachmentStore != null) {
+            try {
+                return new DataFile(attachmentStore.create());
+            } catch (IOException ioe) {
+                throw new MIMEParsingException(ioe);
+            }
+        }
+        SpillStore store = config.getSpillStore();
+        return (store != null) ? new DataFile(store)
+                : new DataFile(createTempFile(config.getTempFilePrefix(),
+                        config.getTempFileSuffix(), config.getTempDir()));
+    }
+
+    private static File createTempFile(String prefix, String suffix, File dir) {
+        try {
+            File tempFile = (dir != null)
+                    ? Files.createTempFile(dir.toPath(), prefix, suffix).toFile()
+                    : Files.createTempFile(prefix, suffix).toFile();
+            // delete the temp file when VM exits as a last resort for file clean up
+            if (DELETE_ON_EXIT) {
+                tempFile.deleteOnExit();
+            }
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Created temp file = {0}", tempFile);
+            }
+            return tempFile;
+        } catch (IOException ioe) {
+            throw new MIMEParsingException(ioe);
         }
     }
 
@@ -64,7 +287,12 @@ final class DataHead {
     }
 
     void moveTo(File f) {
-        if (dataFile != null) {
+        boolean plain;
+        synchronized (this) {
+            plain = !compressed;
+        }
+        // a file with compressed chunks is not the part's content
+        if (dataFile != null && dataFile.canRename() && plain) {
             dataFile.renameTo(f);
         } else {
             try {
@@ -82,11 +310,38 @@ final class DataHead {
         }
     }
 
-    void close() {
+    synchronized void close() {
+        endCompression();
+        release(head);
         head = tail = null;
         if (dataFile != null) {
             dataFile.close();
         }
+        releaseBudget();
+    }
+
+    /**
+     * Releases the storage of the given chunk and all the chunks after it.
+     *
+     * @param c first chunk to release, may be null
+     */
+    private static void release(Chunk c) {
+        for (; c != null; c = c.next) {
+            c.data.close();
+        }
+    }
+
+    /**
+     * Gives a parser buffer that is not retained by the part back to
+     * the buffer pool (if any). A direct buffer stays with the parser.
+     *
+     * @param buf parser buffer whose content is already stored elsewhere
+     */
+    void recycle(ByteBuffer buf) {
+        BufferPool pool = part.msg.config.getBufferPool();
+        if (pool != null && buf.hasArray()) {
+            pool.release(buf.array());
+        }
     }
 
 
@@ -106,6 +361,7 @@ final class DataHead {
 
         // Trigger parsing for the part
         while(tail == null) {
+            checkDiscarded();
             if (!part.msg.makeProgress()) {
                 throw new IllegalStateException("No such MIME Part: "+part);
             }
@@ -117,6 +373,12 @@ final class DataHead {
         return new ReadMultiStream();
     }
 
+    private void checkDiscarded() {
+        if (part.isDiscarded()) {
+            throw new IllegalStateException("Content of "+part+" is skipped by the part filter");
+        }
+    }
+
     /**
      * Used for an assertion. Returns true when readOnce() is not already called.
      * or otherwise throw an exception.
@@ -157,26 +419,22 @@ final class DataHead {
         readOnce = true;
         // Trigger parsing for the part
         while(tail == null) {
+            checkDiscarded();
             if (!part.msg.makeProgress() && tail == null) {
                 throw new IllegalStateException("No such Part: "+part);
             }
         }
-        InputStream in = new ReadOnceStream();
-        head = null;
-        return in;
+        return new ReadOnceStream();
     }
 
     class ReadMultiStream extends InputStream {
         Chunk current;
-        int offset;
-        int len;
-        byte[] buf;
+        final ChunkWindow window = new ChunkWindow();
         boolean closed;
 
         public ReadMultiStream() {
             this.current = head;
-            len = current.data.size();
-            buf = current.data.read();
+            window.load(current.data);
         }
 
         @Override
@@ -184,11 +442,7 @@ final class DataHead {
             if (!fetch()) {
                 return -1;
             }
-
-            sz = Math.min(sz, len-offset);
-            System.arraycopy(buf,offset,b,off,sz);
-            offset += sz;
-            return sz;
+            return window.read(b, off, sz);
         }
 
         @Override
@@ -196,13 +450,17 @@ final class DataHead {
             if (!fetch()) {
                 return -1;
             }
-            return (buf[offset++] & 0xff);
+            return window.read();
         }
 
         void adjustInMemoryUsage() {
             // Nothing to do in this case.
         }
 
+        void chunkConsumed(Chunk c) {
+            // Nothing to do in this case, the chunk may be read again.
+        }
+
         /**
          * Gets to the next chunk if we are done with the current one.
          * @return true if any data available
@@ -216,19 +474,19 @@ final class DataHead {
                 return false;
             }
        
-            while(offset==len) {
+            while(!window.hasRemaining()) {
                 while(!part.parsed && current.next == null) {
                     part.msg.makeProgress();
                 }
+                Chunk consumed = current;
                 current = current.next;
+                chunkConsumed(consumed);
 
                 if (current == null) {
                     return false;
                 }
                 adjustInMemoryUsage();
-                this.offset = 0;
-                this.buf = current.data.read();
-                this.len = current.data.size();
+                window.load(current.data);
             }
             return true;
         }
@@ -236,9 +494,15 @@ final class DataHead {
         @Override
         public void close() throws IOException {
             super.close();
+            closeChunks();
+            window.close();
             current = null;
             closed = true;
         }
+
+        void closeChunks() {
+            // Nothing to do in this case, the chunks are released with the part.
+        }
     }
 
     final class ReadOnceStream extends ReadMultiStream {
@@ -246,8 +510,35 @@ final class DataHead {
         @Override
         void adjustInMemoryUsage() {
             synchronized(DataHead.this) {
-                inMemory -= current.data.size();    // adjust current memory usage
+                inMemory -= storedSize(current.data);    // adjust current memory usage
+            }
+        }
+
+        @Override
+        void chunkConsumed(Chunk c) {
+            synchronized(DataHead.this) {
+                if (head != c) {
+                    return;     // released when the part was closed
+                }
+                head = c.next;
+            }
+            MemoryBudget budget = part.msg.config.getMemoryBudget();
+            if (budget != null && isInMemory(c.data)) {
+                budget.release(DataHead.this, storedSize(c.data));
+            }
+            c.data.close();
+        }
+
+        @Override
+        void closeChunks() {
+            Chunk unread;
+            synchronized(DataHead.this) {
+                // the chunks that are parsed later are released with the part
+                unread = head;
+                head = tail = null;
             }
+            release(unread);
+            releaseBudget();
         }
 
     }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of direct buffers for the off-heap part content, or for
+ * the messages that are read from a channel. All
+ * pooled buffers have the same capacity. Requests for bigger buffers
+ * are not pooled, their memory is freed when they are collected.
+ *
+ * @see BufferPool
+ */
+final class DirectBufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> free;
+
+    DirectBufferPool(int bufferSize, int maxBuffers) {
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(maxBuffers);
+    }
+
+    /**
+     * Returns a cleared direct buffer of at least {@code min} bytes.
+     *
+     * @param min minimum capacity of the buffer
+     * @return a pooled buffer if one is available, otherwise a new one
+     */
+    ByteBuffer acquire(int min) {
+        if (min > bufferSize) {
+            return ByteBuffer.allocateDirect(min);
+        }
+        ByteBuffer buf = free.poll();
+        return (buf != null) ? buf.clear() : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Gives the buffer back to the pool. The caller must not access the
+     * buffer after this call. If the pool is full, the buffer is left
+     * to the garbage collector.
+     *
+     * @param buf buffer that is no longer used
+     */
+    void release(ByteBuffer buf) {
+        if (buf != null && buf.capacity() == bufferSize) {
+            free.offer(buf);
+        }
+    }
+
+    /**
+     * @return no of buffers in the pool
+     */
+    int available() {
+        return free.size();
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps the Part's partial content data off-heap, in a pooled direct
+ * buffer. The parser chunk is copied and goes back to the buffer pool
+ * right away, so the content is on the heap only while it is read.
+ * When the part is spilled, the buffer goes back to the pool too, and
+ * the readers that still have this chunk read it from the file.
+ */
+final class DirectData implements Data {
+    private volatile ByteBuffer data;
+    private final int len;
+    private final MIMEConfig config;
+    private Data moved;     // the chunk in the file once spilled, guarded by this
+
+    DirectData(ByteBuffer buf, MIMEConfig config) {
+        this.len = buf.remaining();
+        this.config = config;
+        ByteBuffer direct = config.getDirectBufferPool().acquire(len);
+        direct.put(buf.duplicate()).flip();
+        data = direct;
+    }
+
+    @Override
+    public int size() {
+        return len;
+    }
+
+    @Override
+    public synchronized byte[] read() {
+        if (moved != null) {
+            return moved.read();
+        }
+        if (data == null) {
+            throw new IllegalStateException("Part content is released");
+        }
+        byte[] buf = new byte[len];
+        data.duplicate().get(buf);
+        return buf;
+    }
+
+    @Override
+    public synchronized void read(int position, byte[] dst, int off, int length) {
+        if (moved != null) {
+            moved.read(position, dst, off, length);
+            return;
+        }
+        if (data == null) {
+            throw new IllegalStateException("Part content is released");
+        }
+        data.duplicate().position(position).get(dst, off, length);
+    }
+
+    @Override
+    public boolean hasArray() {
+        return false;
+    }
+
+    @Override
+    public int offset() {
+        return 0;
+    }
+
+    /*
+     * Gives the buffer back to the pool
+     */
+    @Override
+    public synchronized void close() {
+        config.getDirectBufferPool().release(data);
+        data = null;
+    }
+
+    /**
+     * Gives the buffer back to the pool once the chunk is written to the
+     * file. The reads are synchronized, so none of them uses the buffer.
+     *
+     * @param file data of the chunk in the file
+     */
+    synchronized void moveTo(Data file) {
+        moved = file;
+        close();
+    }
+
+    @Override
+    public synchronized ByteBuffer buffer() {
+        return data.duplicate();
+    }
+
+    @Override
+    public Data createNext(DataHead dataHead, ByteBuffer buf) {
+        if (!config.isOnlyMemory() && dataHead.inMemory >= config.memoryThreshold) {
+            dataHead.spill();
+            return dataHead.newFileData(buf);
+        }
+        return dataHead.newMemoryData(buf);
+    }
+}
@@ -10,11 +10,18 @@
 
 package org.jvnet.mimepull;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
 import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 class FactoryFinder {
 
+    private static final Logger LOGGER = Logger.getLogger(FactoryFinder.class.getName());
+
     static <T> T find(Class<T> factoryId) throws ReflectiveOperationException {
         String systemProp = System.getProperty(factoryId.getName());
         if (systemProp != null) {
@@ -29,6 +36,42 @@ class FactoryFinder {
         return null;
     }
 
+    /*
+     * Finds all the providers, the one named by the system property first.
+     * A provider that cannot be loaded is logged and skipped, the others
+     * are still used.
+     */
+    static <T> List<T> findAll(Class<T> factoryId) {
+        List<T> providers = new ArrayList<>();
+        String systemProp = System.getProperty(factoryId.getName());
+        if (systemProp != null) {
+            try {
+                providers.add(newInstance(factoryId, systemProp));
+            } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+                skipped(factoryId, e);
+            }
+        }
+        Iterator<T> loader = ServiceLoader.load(factoryId).iterator();
+        while (true) {
+            try {
+                if (!loader.hasNext()) {
+                    break;
+                }
+                providers.add(loader.next());
+            } catch (ServiceConfigurationError e) {
+                // the iterator goes on with the next provider
+                skipped(factoryId, e);
+            }
+        }
+        return providers;
+    }
+
+    private static void skipped(Class<?> factoryId, Throwable e) {
+        if (LOGGER.isLoggable(Level.WARNING)) {
+            LOGGER.log(Level.WARNING, "Cannot load a provider of " + factoryId.getName(), e);
+        }
+    }
+
     static <T> T newInstance(Class<T> cls, String className) throws ReflectiveOperationException {
         @SuppressWarnings("unchecked")
         Class<T> providerClass = (Class<T>) FactoryFinder.class.getClassLoader().loadClass(className);
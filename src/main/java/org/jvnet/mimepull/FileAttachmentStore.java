@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Store of the parts in temp files, one per part.
+ */
+final class FileAttachmentStore extends AttachmentStore {
+
+    private final File dir;
+
+    FileAttachmentStore(File dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public Storage create() throws IOException {
+        Path path = (dir != null)
+                ? Files.createTempFile(dir.toPath(), "MIME", null)
+                : Files.createTempFile("MIME", null);
+        try {
+            return new FileStorage(path, FileChannel.open(path,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE));
+        } catch (IOException ioe) {
+            Files.deleteIfExists(path);
+            throw ioe;
+        }
+    }
+
+    private static final class FileStorage implements Storage {
+        private final Path path;
+        private final FileChannel channel;
+
+        FileStorage(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(long position, ByteBuffer src) throws IOException {
+            while (src.hasRemaining()) {
+                position += channel.write(src, position);
+            }
+        }
+
+        @Override
+        public void read(long position, ByteBuffer dst) throws IOException {
+            while (dst.hasRemaining()) {
+                int n = channel.read(dst, position);
+                if (n == -1) {
+                    throw new EOFException();
+                }
+                position += n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                Files.deleteIfExists(path);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return path.toString();
+        }
+    }
+}
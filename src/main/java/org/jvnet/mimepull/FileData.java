@@ -24,7 +24,9 @@ final class FileData implements Data {
     private final int length;
 
     FileData(DataFile file, ByteBuffer buf) {
-        this(file, file.writeTo(buf.array(), 0, buf.limit()), buf.limit());
+        // a chunk without an array is in the parser's direct buffer
+        this(file, buf.hasArray() ? file.writeTo(buf.array(), 0, buf.limit())
+                : file.writeTo(new ByteBuffer[] {buf.duplicate()}), buf.remaining());
     }
 
     FileData(DataFile file, long pointer, int length) {
@@ -40,24 +42,46 @@ final class FileData implements Data {
         return buf;
     }
 
+    @Override
+    public void read(int position, byte[] dst, int off, int len) {
+        file.read(pointer + position, dst, off, len);
+    }
+
+    @Override
+    public boolean hasArray() {
+        return false;
+    }
+
+    @Override
+    public int offset() {
+        return 0;
+    }
+
     /*
      * This shouldn't be called
      */
     @Override
-    public long writeTo(DataFile file) {
+    public ByteBuffer buffer() {
         throw new IllegalStateException();
     }
 
+    /*
+     * The file is owned by the DataHead
+     */
+    @Override
+    public void close() {
+    }
+
     @Override
     public int size() {
         return length;
     }
 
     /*
-     * Always create FileData
+     * Always create file data
      */
     @Override
     public Data createNext(DataHead dataHead, ByteBuffer buf) {
-        return new FileData(file, buf);
+        return dataHead.newFileData(buf);
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Boyer-Moore-Horspool search. The window is shifted by the distance of
+ * its last byte from the end of the boundary.
+ */
+final class HorspoolMatcher implements BoundaryMatcher {
+
+    private final byte[] bndbytes;
+    private final int[] shift = new int[256];
+
+    HorspoolMatcher(byte[] bndbytes) {
+        this.bndbytes = bndbytes;
+        int last = bndbytes.length - 1;
+        for (int i = 0; i < shift.length; i++) {
+            shift[i] = bndbytes.length;
+        }
+        for (int i = 0; i < last; i++) {
+            shift[bndbytes[i]&0xFF] = last - i;
+        }
+    }
+
+    @Override
+    public int match(byte[] mybuf, int off, int len) {
+        int last = bndbytes.length - 1;
+        byte lastByte = bndbytes[last];
+        int end = len - bndbytes.length;
+
+NEXT:   while (off <= end) {
+            byte ch = mybuf[off+last];
+            if (ch == lastByte) {
+                for (int j = last - 1; j >= 0; j--) {
+                    if (mybuf[off+j] != bndbytes[j]) {
+                        off += shift[ch&0xFF];
+                        continue NEXT;
+                    }
+                }
+                return off;
+            }
+            off += shift[ch&0xFF];
+        }
+        return -1;
+    }
+
+    @Override
+    public int match(ByteBuffer mybuf, int off, int len) {
+        int last = bndbytes.length - 1;
+        byte lastByte = bndbytes[last];
+        int end = len - bndbytes.length;
+
+NEXT:   while (off <= end) {
+            byte ch = mybuf.get(off+last);
+            if (ch == lastByte) {
+                for (int j = last - 1; j >= 0; j--) {
+                    if (mybuf.get(off+j) != bndbytes[j]) {
+                        off += shift[ch&0xFF];
+                        continue NEXT;
+                    }
+                }
+                return off;
+            }
+            off += shift[ch&0xFF];
+        }
+        return -1;
+    }
+
+}
@@ -10,17 +10,17 @@
 
 package org.jvnet.mimepull;
 
-import java.io.IOException;
-import java.util.NoSuchElementException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * InternetHeaders is a utility class that manages RFC822 style
- * headers. Given an RFC822 format message stream, it reads lines
- * until the blank line that indicates end of header. The input stream
- * is positioned at the start of the body. The lines are stored
- * within the object and can be extracted as either Strings or
- * {@link Header} objects.
+ * headers. Given an RFC822 format header block, it tokenizes the lines
+ * until the blank line that indicates end of header. The bytes of the
+ * block are kept within the object, only the offsets of the header
+ * lines are recorded, and the lines can be extracted as either Strings
+ * or {@link Header} objects. The Strings are created on demand.
  * <p>
  * This class is mostly intended for service providers. MimeMessage
  * and MimeBody use this class for holding their headers.
@@ -44,54 +44,86 @@ import java.util.List;
  */
 final class InternetHeaders {
 
+    /**
+     * Headers that are looked up for every part. They are recognized while
+     * the block is tokenized, and their lookup doesn't scan the headers.
+     */
+    enum WellKnown {
+        CONTENT_TYPE("Content-Type"),
+        CONTENT_ID("Content-ID"),
+        CONTENT_TRANSFER_ENCODING("Content-Transfer-Encoding"),
+        CONTENT_DISPOSITION("Content-Disposition"),
+        CONTENT_LENGTH("Content-Length");
+
+        // the names have different lengths
+        private static final WellKnown[] BY_LENGTH = new WellKnown[26];
+        static {
+            for (WellKnown h : values()) {
+                BY_LENGTH[h.name.length()] = h;
+            }
+        }
+
+        final String name;
+
+        WellKnown(String name) {
+            this.name = name;
+        }
+
+        static WellKnown of(String name) {
+            WellKnown h = (name.length() < BY_LENGTH.length) ? BY_LENGTH[name.length()] : null;
+            return (h != null && h.name.equalsIgnoreCase(name)) ? h : null;
+        }
+
+        static WellKnown of(Hdr hdr) {
+            WellKnown h = (hdr.nameLength() < BY_LENGTH.length) ? BY_LENGTH[hdr.nameLength()] : null;
+            return (h != null && hdr.nameEquals(h.name)) ? h : null;
+        }
+    }
+
     private final FinalArrayList<Hdr> headers = new FinalArrayList<>();
+    private final Hdr[] wellKnown = new Hdr[WellKnown.values().length];    // first occurrence
+    private int repeated;       // bit set of the well-known headers that occur more than once
 
     /**
-     * Read and parse the given RFC822 message stream till the
-     * blank line separating the header from the body. Store the
-     * header lines inside this InternetHeaders object.
-     * <p>
-     * Note that the header lines are added into this InternetHeaders
-     * object, so any existing headers in this object will not be
-     * affected.
+     * Tokenizes the given RFC822 header block till the blank line
+     * separating the header from the body. A line is terminated by
+     * a NL or CR-NL sequence. The bytes are copied, so the given
+     * buffer can be reused.
      *
-     * @param	lis RFC822 input stream
+     * @param buf   buffer that contains the header block
+     * @param start start of the header block
+     * @param end   end of the header block
      */
-    InternetHeaders(MIMEParser.LineInputStream lis) {
-        // Read header lines until a blank line. It is valid
-        // to have BodyParts with no header lines.
-        String line;
-        String prevline = null;	// the previous header line, as a string
-        // a buffer to accumulate the header in, when we know it's needed
-        StringBuilder lineBuffer = new StringBuilder();
-
-        try {
-            //while ((line = lis.readLine()) != null) {
-            do {
-                line = lis.readLine();
-                if (line != null &&
-                        (line.startsWith(" ") || line.startsWith("\t"))) {
-                    // continuation of header
-                    if (prevline != null) {
-                        lineBuffer.append(prevline);
-                        prevline = null;
-                    }
-                    lineBuffer.append("\r\n");
-                    lineBuffer.append(line);
-                } else {
-                    // new header
-                    if (prevline != null) {
-                        addHeaderLine(prevline);
-                    } else if (lineBuffer.length() > 0) {
-                        // store previous header first
-                        addHeaderLine(lineBuffer.toString());
-                        lineBuffer.setLength(0);
+    InternetHeaders(byte[] buf, int start, int end) {
+        byte[] block = Arrays.copyOfRange(buf, start, end);
+        Hdr prev = null;
+        int lineStart = 0;
+        for (int i = 0; i < block.length; i++) {
+            if (block[i] != '\n') {
+                continue;
+            }
+            int lineEnd = (i > lineStart && block[i-1] == '\r') ? i-1 : i;
+            if (lineEnd == lineStart) {
+                break;      // It is valid to have BodyParts with no header lines.
+            }
+            if (block[lineStart] == ' ' || block[lineStart] == '\t') {
+                // continuation of header
+                if (prev != null) {
+                    prev.extend(lineEnd);
+                }
+            } else {
+                prev = new Hdr(block, lineStart, lineEnd);
+                headers.add(prev);
+                WellKnown h = WellKnown.of(prev);
+                if (h != null) {
+                    if (wellKnown[h.ordinal()] == null) {
+                        wellKnown[h.ordinal()] = prev;
+                    } else {
+                        repeated |= 1 << h.ordinal();
                     }
-                    prevline = line;
                 }
-            } while (line != null && line.length() > 0);
-        } catch (IOException ioex) {
-            throw new MIMEParsingException("Error in input stream", ioex);
+            }
+            lineStart = i+1;
         }
     }
 
@@ -104,13 +136,24 @@ final class InternetHeaders {
      * @return		array of header values, or null if none
      */
     List<String> getHeader(String name) {
+        WellKnown known = WellKnown.of(name);
+        if (known != null && (repeated & 1 << known.ordinal()) == 0) {
+            // no need to scan, but the caller still gets a list of its own
+            Hdr hdr = wellKnown[known.ordinal()];
+            if (hdr == null) {
+                return null;
+            }
+            FinalArrayList<String> v = new FinalArrayList<>();
+            v.add(hdr.getValue());
+            return v;
+        }
         // XXX - should we just step through in index order?
         FinalArrayList<String> v = new FinalArrayList<>(); // accumulate return values
 
         int len = headers.size();
         for( int i=0; i<len; i++ ) {
             Hdr h = headers.get(i);
-            if (name.equalsIgnoreCase(h.name)) {
+            if (h.nameEquals(name)) {
                 v.add(h.getValue());
             }
         }
@@ -118,71 +161,100 @@ final class InternetHeaders {
     }
 
     /**
-     * Return all the headers as an Enumeration of
-     * {@link Header} objects.
+     * Return the first value of a well-known header, without scanning
+     * the headers.
      *
-     * @return	Header objects
+     * @param	h header
+     * @return		the value, or null if the header doesn't exist
      */
-    FinalArrayList<? extends Header> getAllHeaders() {
-        return headers; // conceptually it should be read-only, but for performance reason I'm not wrapping it here
+    String getFirst(WellKnown h) {
+        Hdr hdr = wellKnown[h.ordinal()];
+        return (hdr != null) ? hdr.getValue() : null;
     }
 
     /**
-     * Add an RFC822 header line to the header store.
-     * If the line starts with a space or tab (a continuation line),
-     * add it to the last header line in the list.
-     * <p>
-     * Note that RFC822 headers can only contain US-ASCII characters
+     * Return all the headers as an Enumeration of
+     * {@link Header} objects.
      *
-     * @param	line	raw RFC822 header line
+     * @return	Header objects
      */
-    void addHeaderLine(String line) {
-        try {
-            char c = line.charAt(0);
-            if (c == ' ' || c == '\t') {
-                Hdr h = headers.get(headers.size() - 1);
-                h.line += "\r\n" + line;
-            } else {
-                headers.add(new Hdr(line));
-            }
-        } catch (StringIndexOutOfBoundsException | NoSuchElementException e) {
-            // ignore empty lines and empty vector(?)
-        }
+    FinalArrayList<? extends Header> getAllHeaders() {
+        return headers; // conceptually it should be read-only, but for performance reason I'm not wrapping it here
     }
 
 }
 
 /*
- * A private utility class to represent an individual header.
+ * A private utility class to represent an individual header. It points
+ * to the header line in the header block, and the name and the line are
+ * turned into Strings only when they are asked for.
  */
 
 class Hdr implements Header {
 
-    String name;    // the canonicalized (trimmed) name of this header
+    private final byte[] block;
+    private final int start;    // start of the header line
+    private int end;            // end of the last line (of a folded header)
+    private int nameStart;      // the trimmed name of this header
+    private int nameEnd;
+    private boolean folded;
+
+    private String name;    // the canonicalized (trimmed) name of this header
     // XXX - should name be stored in lower case?
-    String line;    // the entire RFC822 header "line"
+    private String line;    // the entire RFC822 header "line"
+    private String value;
 
     /*
      * Constructor that takes a line and splits out
      * the header name.
      */
-    Hdr(String l) {
-        int i = l.indexOf(':');
-        if (i < 0) {
-            // should never happen
-            name = l.trim();
-        } else {
-            name = l.substring(0, i).trim();
+    Hdr(byte[] block, int start, int end) {
+        this.block = block;
+        this.start = start;
+        this.end = end;
+        int colon = start;
+        while (colon < end && block[colon] != ':') {
+            colon++;
+        }
+        // should always find the ':'
+        nameStart = start;
+        nameEnd = colon;
+        while (nameStart < nameEnd && block[nameStart] <= ' ') {
+            nameStart++;
+        }
+        while (nameEnd > nameStart && block[nameEnd-1] <= ' ') {
+            nameEnd--;
         }
-        line = l;
     }
 
     /*
-     * Constructor that takes a header name and value.
+     * Appends a continuation line, up to the given end
      */
-    Hdr(String n, String v) {
-        name = n;
-        line = n + ": " + v;
+    void extend(int lineEnd) {
+        end = lineEnd;
+        folded = true;
+    }
+
+    int nameLength() {
+        return nameEnd-nameStart;
+    }
+
+    /*
+     * Compares the name with the given one, ignoring case
+     */
+    boolean nameEquals(String n) {
+        if (n.length() != nameEnd-nameStart) {
+            return false;
+        }
+        for (int i = 0; i < n.length(); i++) {
+            char c1 = (char) (block[nameStart+i] & 0xff);
+            char c2 = n.charAt(i);
+            if (c1 != c2 && Character.toUpperCase(c1) != Character.toUpperCase(c2)
+                    && Character.toLowerCase(c1) != Character.toLowerCase(c2)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /*
@@ -190,21 +262,59 @@ class Hdr implements Header {
      */
     @Override
     public String getName() {
+        if (name == null) {
+            name = new String(block, nameStart, nameEnd-nameStart, StandardCharsets.ISO_8859_1);
+        }
         return name;
     }
 
+    /*
+     * Returns the entire header line, the lines of a folded header
+     * are separated with CR-NL.
+     */
+    private String getLine() {
+        if (line == null) {
+            if (!folded) {
+                line = new String(block, start, end-start, StandardCharsets.ISO_8859_1);
+            } else {
+                StringBuilder sb = new StringBuilder(end-start);
+                for (int i = start; i < end; i++) {
+                    char c = (char) (block[i] & 0xff);
+                    if (c == '\r' && block[i+1] == '\n') {
+                        continue;
+                    }
+                    if (c == '\n') {
+                        sb.append("\r\n");
+                    } else {
+                        sb.append(c);
+                    }
+                }
+                line = sb.toString();
+            }
+        }
+        return line;
+    }
+
     /*
      * Return the "value" part of the header line.
      */
     @Override
     public String getValue() {
+        if (value == null) {
+            value = parseValue();
+        }
+        return value;
+    }
+
+    private String parseValue() {
+        String line = getLine();
         int i = line.indexOf(':');
         if (i < 0) {
             return line;
         }
 
         int j;
-        if (name.equalsIgnoreCase("Content-Description")) {
+        if (nameEquals("Content-Description")) {
             // Content-Description should retain the folded whitespace after header unfolding -
             // rf. RFC2822 section 2.2.3, rf. RFC2822 section 3.2.3
             for (j = i + 1; j < line.length(); j++) {
@@ -225,4 +335,3 @@ class Hdr implements Header {
         return line.substring(j);
     }
 }
-
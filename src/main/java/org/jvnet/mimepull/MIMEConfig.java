@@ -11,6 +11,10 @@
 package org.jvnet.mimepull;
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,11 +40,49 @@ public class MIMEConfig {
     // Maximum in-memory data per attachment
     long memoryThreshold;
 
+    // In-memory data per attachment before the chunks are compressed, -1 if they are not
+    long compressionThreshold = -1L;
+
     // temp Dir to store large files
     File tempDir;
     String prefix;
     String suffix;
 
+    // Algorithm to find the boundary
+    private BoundarySearch boundarySearch = BoundarySearch.BOYER_MOORE;
+
+    // Segment files shared by the spilled parts, null if each part has a file of its own
+    private volatile SpillStore spillStore;
+    private long spillSegmentSize;
+
+    // Storage of the spilled parts, null if they are in temp files
+    private volatile AttachmentStore attachmentStore;
+
+    // Background writer of the spilled chunks, null if they are written by the parser
+    private volatile SpillWriter spillWriter;
+
+    // Heap budget shared with other configs, null if there is none
+    private volatile MemoryBudget memoryBudget;
+
+    // Limits, -1 if there is no limit
+    long maxHeaderSize = -1L;       // bytes of the header block of a part
+    int maxHeaderCount = -1;        // headers of a part
+    int maxParts = -1;
+    long maxPartSize = -1L;         // content bytes of a part
+    long maxMessageSize = -1L;      // bytes of the whole message
+
+    // Content-Transfer-Encoding decoders added to this config, by lower case name
+    private final Map<String, TransferDecoder> decoders = new HashMap<>();
+
+    // Recycled parser buffers, null if recycling is disabled
+    private volatile BufferPool bufferPool;
+    private volatile DirectBufferPool channelBufferPool;
+    private int bufferPoolSize;
+
+    // Off-heap storage of the part content, null if the content is on the heap
+    private volatile DirectBufferPool directBufferPool;
+    private int directBufferPoolSize;
+
     private MIMEConfig(boolean parseEagerly, int chunkSize,
                        long inMemoryThreshold, String dir, String prefix, String suffix) {
         this.parseEagerly = parseEagerly;
@@ -77,6 +119,9 @@ public class MIMEConfig {
 
     void setChunkSize(int chunkSize) {
         this.chunkSize = chunkSize;
+        setBufferPoolSize(bufferPoolSize);
+        setDirectBufferPoolSize(directBufferPoolSize);
+        updateSpillStore();
     }
 
     long getMemoryThreshold() {
@@ -94,10 +139,258 @@ public class MIMEConfig {
         this.memoryThreshold = memoryThreshold;
     }
 
+    long getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * If the in-memory content of an attachment is greater than the
+     * threshold, its next chunks are kept compressed in memory (with
+     * {@link java.util.zip.Deflater}). The compressed chunks count for
+     * their compressed size against the memory threshold, so text content
+     * stays in memory for much longer before it is written to the disk.
+     * The chunks that don't get smaller are kept as they are.
+     *
+     * @param compressionThreshold no of bytes per attachment
+     *        if -1, then the content is not compressed (default)
+     */
+    public void setCompressionThreshold(long compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Accounts the in-memory content of the parts against a budget that
+     * may be shared with other configs. When the budget is exceeded,
+     * parts are written to temp files, whatever message they belong to.
+     *
+     * @param memoryBudget shared budget,
+     *        if null, then only the memory threshold applies (default)
+     */
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
     boolean isOnlyMemory() {
         return memoryThreshold == -1L;
     }
 
+    BoundarySearch getBoundarySearch() {
+        return boundarySearch;
+    }
+
+    /**
+     * Sets the algorithm used to find the boundary in the message.
+     *
+     * @param boundarySearch boundary search algorithm,
+     *        default is {@link BoundarySearch#BOYER_MOORE}
+     */
+    public void setBoundarySearch(BoundarySearch boundarySearch) {
+        if (boundarySearch == null) {
+            throw new IllegalArgumentException("boundarySearch");
+        }
+        this.boundarySearch = boundarySearch;
+    }
+
+    /**
+     * Limits the size of the header block of a part. The parsing stops
+     * with {@link MIMELimitException} when the end of the header block is
+     * not found within these many bytes.
+     *
+     * @param maxHeaderSize no of bytes of the headers of a part,
+     *        if -1, then there is no limit (default)
+     */
+    public void setMaxHeaderSize(long maxHeaderSize) {
+        this.maxHeaderSize = maxHeaderSize;
+    }
+
+    /**
+     * Limits the number of headers of a part. The parsing stops with
+     * {@link MIMELimitException} as soon as a part has more headers,
+     * before the rest of its header block is read.
+     *
+     * @param maxHeaderCount no of headers per part,
+     *        if -1, then there is no limit (default)
+     */
+    public void setMaxHeaderCount(int maxHeaderCount) {
+        this.maxHeaderCount = maxHeaderCount;
+    }
+
+    /**
+     * Limits the number of parts of a message. The parsing stops with
+     * {@link MIMELimitException} when the message has more parts.
+     *
+     * @param maxParts no of parts per message,
+     *        if -1, then there is no limit (default)
+     */
+    public void setMaxParts(int maxParts) {
+        this.maxParts = maxParts;
+    }
+
+    /**
+     * Limits the content size of a part, before it is decoded. The parsing
+     * stops with {@link MIMELimitException} when a part is bigger, before
+     * more than a chunk of its excess content is stored.
+     *
+     * @param maxPartSize no of bytes per part,
+     *        if -1, then there is no limit (default)
+     */
+    public void setMaxPartSize(long maxPartSize) {
+        this.maxPartSize = maxPartSize;
+    }
+
+    /**
+     * Limits the size of a message, including the preamble, the boundaries
+     * and the headers. The parsing stops with {@link MIMELimitException}
+     * as soon as more bytes are read.
+     *
+     * @param maxMessageSize no of bytes per message,
+     *        if -1, then there is no limit (default)
+     */
+    public void setMaxMessageSize(long maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * Adds a decoder for the parts of the messages that use this config.
+     * It takes precedence over the decoders that are looked up using
+     * ServiceLoader and over the built-in decoders.
+     *
+     * @param decoder Content-Transfer-Encoding decoder
+     */
+    public void addTransferDecoder(TransferDecoder decoder) {
+        for (String encoding : decoder.getEncodings()) {
+            decoders.put(encoding.toLowerCase(Locale.ROOT), decoder);
+        }
+    }
+
+    TransferDecoder getTransferDecoder(String encoding) {
+        return decoders.isEmpty() ? null : decoders.get(encoding.toLowerCase(Locale.ROOT));
+    }
+
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    DirectBufferPool getChannelBufferPool() {
+        return channelBufferPool;
+    }
+
+    /**
+     * Enables recycling of the parser buffers. Chunk storage of the parts
+     * is then taken from a bounded pool shared by all the messages parsed
+     * with this configuration. The buffers go back to the pool when a
+     * {@link MIMEPart} is closed or when its content has been consumed
+     * through {@link MIMEPart#readOnce()}. Streams obtained from a part
+     * must not be used after the part is closed. The direct buffers that
+     * the messages are read into from a channel are pooled as well, they go
+     * back to the pool once the message is parsed.
+     *
+     * @param size maximum number of pooled buffers,
+     *        if 0, then recycling is disabled (default)
+     */
+    public void setBufferPoolSize(int size) {
+        int capacity = MIMEParser.getCapacity(chunkSize, MIMEParser.MAX_BOUNDARY_LENGTH);
+        this.bufferPoolSize = size;
+        this.bufferPool = (size > 0) ? new BufferPool(capacity, size) : null;
+        this.channelBufferPool = (size > 0) ? new DirectBufferPool(capacity, size) : null;
+    }
+
+    DirectBufferPool getDirectBufferPool() {
+        return directBufferPool;
+    }
+
+    /**
+     * Stores the in-memory content of the parts off-heap, in direct
+     * buffers. The buffers are taken from a bounded pool shared by all the
+     * messages parsed with this configuration, and go back to the pool when
+     * a {@link MIMEPart} is closed or when its content has been consumed
+     * through {@link MIMEPart#readOnce()}. The content is copied to the
+     * heap only when it is read.
+     *
+     * @param size maximum number of pooled direct buffers,
+     *        if 0, then the content is kept on the heap (default)
+     */
+    public void setDirectBufferPoolSize(int size) {
+        this.directBufferPoolSize = size;
+        this.directBufferPool = (size > 0) ? new DirectBufferPool(chunkSize, size) : null;
+    }
+
+    SpillStore getSpillStore() {
+        return spillStore;
+    }
+
+    /**
+     * Packs the spilled parts of all the messages parsed with this
+     * configuration into a few shared temp files of the given size,
+     * instead of creating a temp file for each part. The space of a
+     * part is reused once the part is closed. {@link MIMEPart#moveTo(File)}
+     * then copies the content instead of renaming the file.
+     *
+     * @param segmentSize no of bytes of a shared temp file,
+     *        if 0, then each part has a temp file of its own (default)
+     */
+    public void setSpillSegmentSize(long segmentSize) {
+        this.spillSegmentSize = segmentSize;
+        updateSpillStore();
+    }
+
+    private void updateSpillStore() {
+        SpillStore old = spillStore;
+        this.spillStore = (spillSegmentSize > 0)
+                ? new SpillStore(tempDir, prefix, suffix, spillSegmentSize, 8 * chunkSize)
+                : null;
+        // the parts that are in the old store keep it until they are closed
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    AttachmentStore getAttachmentStore() {
+        AttachmentStore store = attachmentStore;
+        return (store != null) ? store : DefaultStore.INSTANCE;
+    }
+
+    /**
+     * Stores the spilled parts with the given store instead of temp files.
+     * The temp directory and the spill segment size then don't apply.
+     *
+     * @param attachmentStore storage of the spilled parts,
+     *        if null, then the store found using ServiceLoader, or else
+     *        temp files (default)
+     */
+    public void setAttachmentStore(AttachmentStore attachmentStore) {
+        this.attachmentStore = attachmentStore;
+    }
+
+    /*
+     * Looked up once, on the first spilled part
+     */
+    private static final class DefaultStore {
+        static final AttachmentStore INSTANCE = AttachmentStore.newInstance();
+    }
+
+    SpillWriter getSpillWriter() {
+        return spillWriter;
+    }
+
+    /**
+     * Writes the spilled chunks of the parts in the background, so the
+     * parsing goes on while they are written to the temp files. A chunk
+     * is read from memory until it is written. When the given number of
+     * writes are pending, the parser waits for one of them to finish.
+     *
+     * @param executor runs the writes,
+     *        if null, then the parser writes the chunks itself (default)
+     * @param maxPendingWrites maximum no of chunks waiting to be written
+     */
+    public void setSpillExecutor(Executor executor, int maxPendingWrites) {
+        this.spillWriter = (executor != null) ? new SpillWriter(executor, maxPendingWrites) : null;
+    }
+
     File getTempDir() {
         return tempDir;
     }
@@ -117,6 +410,7 @@ public class MIMEConfig {
     public final void setDir(String directory) {
         if (tempDir == null && directory != null && !directory.equals("")) {
             tempDir = new File(directory);
+            updateSpillStore();
         }
     }
 
@@ -125,7 +419,7 @@ public class MIMEConfig {
      * attachment contents in memory.
      */
     public void validate() {
-        if (!isOnlyMemory()) {
+        if (!isOnlyMemory() && getAttachmentStore() == null) {
             try {
                 File tempFile = (tempDir == null)
                         ? File.createTempFile(prefix, suffix)
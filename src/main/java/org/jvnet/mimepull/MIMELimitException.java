@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+/**
+ * Thrown when a MIME message exceeds one of the limits of its
+ * {@link MIMEConfig}. The parsing is aborted as soon as the limit is
+ * exceeded, the rest of the message is not read.
+ */
+public class MIMELimitException extends MIMEParsingException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a new exception with the specified detail
+     * message.  The cause is not initialized.
+     *
+     * @param message The detail message which is later
+     *                retrieved using the getMessage method
+     */
+    public MIMELimitException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructs a new exception with the specified detail
+     * message and cause.
+     *
+     * @param message The detail message which is later retrieved
+     *                using the getMessage method
+     * @param cause   The cause which is saved for the later
+     *                retrieval throw by the getCause method
+     */
+    public MIMELimitException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
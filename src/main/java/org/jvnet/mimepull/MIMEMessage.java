@@ -15,6 +15,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLDecoder;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -22,6 +26,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,15 +43,22 @@ public class MIMEMessage implements Closeable {
 
     MIMEConfig config;
 
-    private final InputStream in;
-    private final Iterator<MIMEEvent> it;
+    private final Closeable in;
+    private final MIMEParser parser;
+    private final Iterator<MIMEEvent> it;     // null if the data is pushed
+    private final boolean view;     // parts are slices of an in-memory message
+    private volatile MIMEPartFilter filter;
     private boolean parsed;     // true when entire message is parsed
+    private MIMEParsingException failure;     // parsing error of pushed data
     private MIMEPart currentPart;
     private int currentIndex;
 
     private final List<MIMEPart> partsList = new ArrayList<>();
     private final Map<String, MIMEPart> partsMap = new HashMap<>();
 
+    // where this message is created, null unless the leak detection is on
+    private final ResourceCleaner.LeakTracker leakTracker;
+
     /**
      * @see #MIMEMessage(InputStream, String, MIMEConfig)
      *
@@ -64,15 +77,221 @@ public class MIMEMessage implements Closeable {
      * @param boundary the separator for parts(pass it without --)
      * @param config   various configuration parameters
      */
+    @SuppressWarnings("this-escape")
     public MIMEMessage(InputStream in, String boundary, MIMEConfig config) {
         this.in = in;
         this.config = config;
-        MIMEParser parser = new MIMEParser(in, boundary, config);
+        parser = new MIMEParser(in, boundary, config);
+        it = parser.iterator();
+        view = false;
+
+        if (config.isParseEagerly()) {
+            parseAll();
+        }
+        leakTracker = ResourceCleaner.track(this);
+    }
+
+    /**
+     * @see #MIMEMessage(InputStream, ContentType, MIMEConfig)
+     *
+     * @param in          MIME message stream
+     * @param contentType Content-Type of the message
+     */
+    public MIMEMessage(InputStream in, ContentType contentType) {
+        this(in, contentType, new MIMEConfig());
+    }
+
+    /**
+     * Creates a MIME message from the content's stream, the boundary is
+     * taken from the message's Content-Type. The content stream is closed
+     * when EOF is reached.
+     *
+     * <pre>
+     * for e.g.:
+     * {@code
+     *
+     * new MIMEMessage(in, ContentType.parse(request.getHeader("Content-Type")), config);
+     * }</pre>
+     *
+     * @param in          MIME message stream
+     * @param contentType Content-Type of the message
+     * @param config      various configuration parameters
+     * @throws MIMEParsingException if the Content-Type has no boundary parameter
+     */
+    public MIMEMessage(InputStream in, ContentType contentType, MIMEConfig config) {
+        this(in, getBoundary(contentType), config);
+    }
+
+    private static String getBoundary(ContentType contentType) {
+        String boundary = contentType.getParameter("boundary");
+        if (boundary == null || boundary.isEmpty()) {
+            throw new MIMEParsingException("There is no boundary parameter in Content-Type: " + contentType);
+        }
+        return boundary;
+    }
+
+    /**
+     * @see #MIMEMessage(ReadableByteChannel, String, MIMEConfig)
+     *
+     * @param channel  MIME message channel
+     * @param boundary the separator for parts(pass it without --)
+     */
+    public MIMEMessage(ReadableByteChannel channel, String boundary) {
+        this(channel, boundary, new MIMEConfig());
+    }
+
+    /**
+     * Creates a MIME message from the content's channel. The data is read
+     * from the channel into a direct buffer, without going through an
+     * {@link InputStream}, and the boundary is searched there. The content
+     * is copied only to where it is stored, and not at all for the parts
+     * that are skipped. The direct buffers are recycled if the config has
+     * a buffer pool ({@link MIMEConfig#setBufferPoolSize(int)}). The channel
+     * must be in blocking mode, non-blocking sources are better served by
+     * {@link MIMEStreamParser}. The channel is closed when EOF is reached.
+     *
+     * @param channel  MIME message channel
+     * @param boundary the separator for parts(pass it without --)
+     * @param config   various configuration parameters
+     * @throws IllegalArgumentException if the channel is in non-blocking mode
+     */
+    @SuppressWarnings("this-escape")
+    public MIMEMessage(ReadableByteChannel channel, String boundary, MIMEConfig config) {
+        this.in = channel;
+        this.config = config;
+        parser = new MIMEParser(channel, boundary, config);
+        it = parser.iterator();
+        view = false;
+
+        if (config.isParseEagerly()) {
+            parseAll();
+        }
+        leakTracker = ResourceCleaner.track(this);
+    }
+
+    /**
+     * @see #MIMEMessage(ByteBuffer, String, MIMEConfig)
+     *
+     * @param content  MIME message
+     * @param boundary the separator for parts(pass it without --)
+     */
+    public MIMEMessage(byte[] content, String boundary) {
+        this(ByteBuffer.wrap(content), boundary, new MIMEConfig());
+    }
+
+    /**
+     * @see #MIMEMessage(ByteBuffer, String, MIMEConfig)
+     *
+     * @param content  MIME message
+     * @param boundary the separator for parts(pass it without --)
+     * @param config   various configuration parameters
+     */
+    public MIMEMessage(byte[] content, String boundary, MIMEConfig config) {
+        this(ByteBuffer.wrap(content), boundary, config);
+    }
+
+    /**
+     * @see #MIMEMessage(ByteBuffer, String, MIMEConfig)
+     *
+     * @param content  MIME message
+     * @param boundary the separator for parts(pass it without --)
+     */
+    public MIMEMessage(ByteBuffer content, String boundary) {
+        this(content, boundary, new MIMEConfig());
+    }
+
+    /**
+     * Creates a MIME message from content that is already in memory, the
+     * remaining bytes of the buffer. The content is not copied: the parts
+     * are slices of the buffer, and nothing is spilled to files. So the
+     * content must not be modified while the message is in use. A buffer
+     * without an accessible array (for e.g. a direct or a mapped buffer)
+     * is scanned in place too.
+     *
+     * @param content  MIME message
+     * @param boundary the separator for parts(pass it without --)
+     * @param config   various configuration parameters
+     */
+    @SuppressWarnings("this-escape")
+    public MIMEMessage(ByteBuffer content, String boundary, MIMEConfig config) {
+        this.in = null;
+        this.config = config;
+        parser = new MIMEParser(content, boundary, config);
         it = parser.iterator();
+        view = true;
 
         if (config.isParseEagerly()) {
             parseAll();
         }
+        leakTracker = ResourceCleaner.track(this);
+    }
+
+    /**
+     * @see #open(Path, String, MIMEConfig)
+     *
+     * @param path     file that contains the MIME message
+     * @param boundary the separator for parts(pass it without --)
+     * @return the MIME message
+     */
+    public static MIMEMessage open(Path path, String boundary) {
+        return open(path, boundary, new MIMEConfig());
+    }
+
+    /**
+     * Creates a MIME message from a file. The file is memory mapped, the
+     * boundary is searched in the mapping and the parts are slices of it:
+     * the content is neither copied to the heap nor spilled to temp files,
+     * so the memory use does not depend on the size of the file. The file
+     * must not be modified while the message is in use. A file that is too
+     * big to be mapped at once is read like a channel instead.
+     *
+     * @param path     file that contains the MIME message
+     * @param boundary the separator for parts(pass it without --)
+     * @param config   various configuration parameters
+     * @return the MIME message
+     * @throws MIMEParsingException if the file cannot be read
+     */
+    public static MIMEMessage open(Path path, String boundary, MIMEConfig config) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return new MIMEMessage(channel, boundary, config);
+            }
+            // the mapping stays valid after the channel is closed
+            try (FileChannel fc = channel) {
+                return new MIMEMessage(fc.map(FileChannel.MapMode.READ_ONLY, 0, size), boundary, config);
+            }
+        } catch (IOException ioe) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    ioe.addSuppressed(e);
+                }
+            }
+            throw new MIMEParsingException(ioe);
+        }
+    }
+
+    /*
+     * Creates a MIME message whose events are pushed by MIMEStreamParser
+     */
+    MIMEMessage(MIMEParser parser, MIMEConfig config) {
+        this.parser = parser;
+        this.in = null;
+        this.config = config;
+        this.it = null;
+        this.view = false;
+        leakTracker = ResourceCleaner.track(this);
+    }
+
+    /*
+     * Returns true if the parts are slices of an in-memory message
+     */
+    boolean isView() {
+        return view;
     }
 
     /**
@@ -98,7 +317,7 @@ public class MIMEMessage implements Closeable {
      * @param index sequential order of the part. starts with zero.
      * @return attachemnt part
      */
-    public MIMEPart getPart(int index) {
+    public synchronized MIMEPart getPart(int index) {
         LOGGER.log(Level.FINE, "index={0}", index);
         MIMEPart part = (index < partsList.size()) ? partsList.get(index) : null;
         if (parsed && part == null) {
@@ -122,7 +341,7 @@ public class MIMEMessage implements Closeable {
      * @param contentId Content-ID of the part, expects Content-ID without {@code <, >}
      * @return attachemnt part
      */
-    public MIMEPart getPart(String contentId) {
+    public synchronized MIMEPart getPart(String contentId) {
         LOGGER.log(Level.FINE, "Content-ID={0}", contentId);
         MIMEPart part = getDecodedCidPart(contentId);
         if (parsed && part == null) {
@@ -149,6 +368,73 @@ public class MIMEMessage implements Closeable {
         return part;
     }
 
+    /**
+     * Publishes the parts of the message. A part is delivered as soon as
+     * its headers are parsed, and the message is parsed only as far as the
+     * subscribers request. The parsing and the delivery happen in the
+     * thread that calls {@link Flow.Subscription#request}, which blocks while
+     * a stream based message is read.
+     *
+     * @return publisher of the message's parts
+     * @see #getPartPublisher(Executor)
+     */
+    public Flow.Publisher<MIMEPart> getPartPublisher() {
+        return getPartPublisher(Runnable::run);
+    }
+
+    /**
+     * Publishes the parts of the message. A part is delivered as soon as
+     * its headers are parsed, and the message is parsed only as far as the
+     * subscribers request. The parsing and the delivery happen in tasks run
+     * by the given executor, so the requesting threads never block on the
+     * message's input.
+     *
+     * @param executor runs the parsing and the delivery of the parts
+     * @return publisher of the message's parts
+     */
+    public Flow.Publisher<MIMEPart> getPartPublisher(Executor executor) {
+        return new PullPublisher<>(() -> new PullPublisher.Source<MIMEPart>() {
+            private int index;
+
+            @Override
+            public MIMEPart next() {
+                return getParsedPart(index++);
+            }
+        }, executor);
+    }
+
+    /*
+     * Parses the message until the headers of the nth part are available.
+     * Returns null if the message doesn't have so many parts.
+     */
+    synchronized MIMEPart getParsedPart(int index) {
+        while (index >= partsList.size() || !partsList.get(index).hasHeaders()) {
+            if (!makeProgress()) {
+                return (index < partsList.size() && partsList.get(index).hasHeaders())
+                        ? partsList.get(index) : null;
+            }
+        }
+        return partsList.get(index);
+    }
+
+    /**
+     * Sets the filter that selects the parts whose content is kept. The
+     * content of the other parts is skipped while parsing: it is neither
+     * kept in memory nor written to temp files, and reading it fails. The
+     * headers of all parts remain available. The parts that are requested
+     * with {@link #getPart} before the parsing reaches them are always kept.
+     *
+     * <p>
+     * The filter applies to the parts that are parsed after this call, so
+     * it needs to be set before the parsing starts (and the message must
+     * not be parsed eagerly).
+     *
+     * @param filter selects the parts to keep, null keeps all of them
+     */
+    public void setPartFilter(MIMEPartFilter filter) {
+        this.filter = filter;
+    }
+
     /**
      * Parses the whole MIME message eagerly
      */
@@ -166,11 +452,18 @@ public class MIMEMessage implements Closeable {
      * <p> Does not throw {@link org.jvnet.mimepull.MIMEParsingException} if an
      * error occurred during closing a MIME part. The exception (if any) is
      * still logged.
+     *
+     * <p> The temp files of a message that is not closed are deleted once
+     * its parts are unreachable. The {@code org.jvnet.mimepull.leakdetection}
+     * system property reports where such messages are created.
      */
     @Override
     public void close() {
         close(partsList);
         close(partsMap.values());
+        if (leakTracker != null) {
+            leakTracker.close();
+        }
     }
 
     private void close(final Collection<MIMEPart> parts) {
@@ -189,12 +482,68 @@ public class MIMEMessage implements Closeable {
      * @return false if the parsing is completed.
      */
     public synchronized boolean makeProgress() {
+        if (it == null) {
+            return awaitProgress();
+        }
         if (!it.hasNext()) {
             return false;
         }
 
-        MIMEEvent event = it.next();
+        process(it.next());
+        return true;
+    }
+
+    /*
+     * The data is pushed by another thread, so wait until it is parsed
+     */
+    private boolean awaitProgress() {
+        checkFailure();
+        if (parsed) {
+            return false;
+        }
+        try {
+            wait();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new MIMEParsingException(ie);
+        }
+        checkFailure();
+        return true;
+    }
+
+    private void checkFailure() {
+        if (failure instanceof MIMELimitException) {
+            throw new MIMELimitException(failure.getMessage(), failure);
+        } else if (failure != null) {
+            throw new MIMEParsingException(failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Callback from MIMEStreamParser for an event of the pushed data.
+     *
+     * @param event parsing event
+     */
+    synchronized void push(MIMEEvent event) {
+        try {
+            process(event);
+        } finally {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Callback from MIMEStreamParser when the pushed data cannot be parsed.
+     * Threads waiting for the parts get the error.
+     *
+     * @param e parsing error
+     */
+    synchronized void fail(MIMEParsingException e) {
+        failure = e;
+        notifyAll();
+    }
 
+    private void process(MIMEEvent event) {
         switch (event.getEventType()) {
             case START_MESSAGE:
                 LOGGER.log(Level.FINE, "MIMEEvent={0}", MIMEEvent.EVENT_TYPE.START_MESSAGE);
@@ -208,13 +557,16 @@ public class MIMEMessage implements Closeable {
                 LOGGER.log(Level.FINE, "MIMEEvent={0}", MIMEEvent.EVENT_TYPE.HEADERS);
                 MIMEEvent.Headers headers = (MIMEEvent.Headers) event;
                 InternetHeaders ih = headers.getHeaders();
-                List<String> cids = ih.getHeader("content-id");
-                String cid = (cids != null) ? cids.get(0) : currentIndex + "";
+                String cid = ih.getFirst(InternetHeaders.WellKnown.CONTENT_ID);
+                if (cid == null) {
+                    cid = currentIndex + "";
+                }
                 if (cid.length() > 2 && cid.charAt(0) == '<') {
                     cid = cid.substring(1, cid.length() - 1);
                 }
                 MIMEPart listPart = (currentIndex < partsList.size()) ? partsList.get(currentIndex) : null;
                 MIMEPart mapPart = getDecodedCidPart(cid);
+                boolean requested = listPart != null || mapPart != null;
                 if (listPart == null && mapPart == null) {
                     currentPart = getPart(cid);
                     partsList.add(currentIndex, currentPart);
@@ -229,13 +581,21 @@ public class MIMEMessage implements Closeable {
                     throw new MIMEParsingException("Created two different attachments using Content-ID and index");
                 }
                 currentPart.setHeaders(ih);
+                MIMEPartFilter partFilter = filter;
+                if (!requested && partFilter != null && !partFilter.accept(currentIndex, currentPart)) {
+                    LOGGER.log(Level.FINE, "Skipping the content of {0}", currentPart);
+                    currentPart.discard();
+                    parser.skipBody();
+                }
                 break;
 
             case CONTENT:
                 LOGGER.log(Level.FINER, "MIMEEvent={0}", MIMEEvent.EVENT_TYPE.CONTENT);
                 MIMEEvent.Content content = (MIMEEvent.Content) event;
                 ByteBuffer buf = content.getData();
-                currentPart.addBody(buf);
+                if (!currentPart.isDiscarded()) {
+                    currentPart.addBody(buf);
+                }
                 break;
 
             case END_PART:
@@ -247,16 +607,17 @@ public class MIMEMessage implements Closeable {
             case END_MESSAGE:
                 LOGGER.log(Level.FINE, "MIMEEvent={0}", MIMEEvent.EVENT_TYPE.END_MESSAGE);
                 parsed = true;
-                try {
-                    in.close();
-                } catch (IOException ioe) {
-                    throw new MIMEParsingException(ioe);
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException ioe) {
+                        throw new MIMEParsingException(ioe);
+                    }
                 }
                 break;
 
             default:
                 throw new MIMEParsingException("Unknown Parser state = " + event.getEventType());
         }
-        return true;
     }
 }
@@ -10,8 +10,11 @@
 
 package org.jvnet.mimepull;
 
+import java.io.Closeable;
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
 import java.util.*;
 import java.util.logging.Logger;
 import java.nio.ByteBuffer;
@@ -39,21 +42,24 @@ class MIMEParser implements Iterable<MIMEEvent> {
     
     private static final Logger LOGGER = Logger.getLogger(MIMEParser.class.getName());
 
-    private static final String HEADER_ENCODING = "ISO8859-1";
     
     // Actually, the grammar doesn't support whitespace characters
     // after boundary. But the mail implementation checks for it.
     // We will only check for these many whitespace characters after boundary
     private static final int NO_LWSP = 1000;
+    // RFC 2046 limits the boundary to 70 characters, plus the leading "--"
+    static final int MAX_BOUNDARY_LENGTH = 72;
+    private static final ByteBuffer EMPTY = ByteBuffer.wrap(new byte[0]);
     private enum STATE {START_MESSAGE, SKIP_PREAMBLE, START_PART, HEADERS, BODY, END_PART, END_MESSAGE}
     private STATE state = STATE.START_MESSAGE;
 
     private final InputStream in;
+    private final ReadableByteChannel channel;
     private final byte[] bndbytes;
     private final int bl;
     private final MIMEConfig config;
-    private final int[] bcs = new int[128]; // BnM algo: Bad Character Shift table
-    private final int[] gss;                // BnM algo : Good Suffix Shift table
+    private final BufferPool pool;
+    private final BoundaryMatcher matcher;
 
     /**
      * Have we parsed the data from our InputStream yet?
@@ -68,24 +74,97 @@ class MIMEParser implements Iterable<MIMEEvent> {
 
     private boolean eof;
     private final int capacity;
-    private byte[] buf;
-    private int len;
+    private final boolean view;     // the data is the caller's message, it is never copied
+    private final boolean pushed;
+    private byte[] buf;         // null if the data is in a ByteBuffer
+    private ByteBuffer data;    // direct buffer the channel is read into, or in-memory message without an array
+    private int pos;            // start of the unconsumed data, 0 for a heap buffer unless view
+    private int len;            // end of the data
     private boolean bol;        // beginning of the line
+    private boolean skipping;   // content of the current part is not needed
+
+    private int parts;          // parts so far
+    private long partSize;      // content bytes of the current part
+    private long total;         // bytes of the message read so far
+    private MIMELimitException exceeded;    // parsing is aborted
+
+    /*
+     * Parses the MIME content that is pushed to the parser with push()
+     * and endOfInput() instead of being read from a stream.
+     */
+    MIMEParser(String boundary, MIMEConfig config) {
+        this(null, null, null, boundary, config);
+    }
 
     /*
      * Parses the MIME content. At the EOF, it also closes input stream
      */
     MIMEParser(InputStream in, String boundary, MIMEConfig config) {
+        this(in, null, null, boundary, config);
+    }
+
+    /*
+     * Parses the MIME content read from a blocking channel into a direct
+     * buffer, where the boundary is searched. The chunks are slices of
+     * that buffer, valid until the next event. At the EOF, it also closes
+     * the channel
+     */
+    MIMEParser(ReadableByteChannel channel, String boundary, MIMEConfig config) {
+        this(null, channel, null, boundary, config);
+        if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+            throw new IllegalArgumentException("Channel is in non-blocking mode, use MIMEStreamParser instead");
+        }
+    }
+
+    /*
+     * Parses the MIME content that is already in memory. The content is
+     * scanned in place, whether it has an array or not (for e.g. a mapped
+     * file), and the parsed chunks are slices of it.
+     */
+    MIMEParser(ByteBuffer content, String boundary, MIMEConfig config) {
+        this(null, null, content, boundary, config);
+    }
+
+    private MIMEParser(InputStream in, ReadableByteChannel channel, ByteBuffer content, String boundary, MIMEConfig config) {
         this.in = in;
+        this.channel = channel;
         this.bndbytes = getBytes("--"+boundary);
         bl = bndbytes.length;
         this.config = config;
-        gss = new int[bl];
-        compileBoundaryPattern();
+        this.pool = config.getBufferPool();
+        this.matcher = config.getBoundarySearch().newMatcher(bndbytes);
+
+        capacity = getCapacity(config.chunkSize, bl);
+        pushed = in == null && channel == null && content == null;
+        view = content != null;
+        if (view && content.hasArray()) {
+            buf = content.array();
+            pos = content.arrayOffset() + content.position();
+            len = content.arrayOffset() + content.limit();
+            eof = true;
+        } else if (view) {
+            data = content.duplicate();
+            pos = content.position();
+            len = content.limit();
+            eof = true;
+        } else if (channel != null) {
+            DirectBufferPool directPool = config.getChannelBufferPool();
+            data = (directPool != null) ? directPool.acquire(capacity) : ByteBuffer.allocateDirect(capacity);
+        } else {
+            createBuf(capacity);
+        }
+    }
 
+    /**
+     * Computes the parser buffer capacity.
+     *
+     * @param chunkSize approximate chunk size
+     * @param bl length of the boundary including the leading "--"
+     * @return buffer capacity
+     */
+    static int getCapacity(int chunkSize, int bl) {
         // \r\n + boundary + "--\r\n" + lots of LWSP
-        capacity = config.chunkSize+2+bl+4+NO_LWSP;
-        createBuf(capacity);
+        return chunkSize+2+bl+4+NO_LWSP;
     }
 
     /**
@@ -107,58 +186,12 @@ class MIMEParser implements Iterable<MIMEEvent> {
         }
 
         @Override
-        @SuppressWarnings({"fallthrough"})
         public MIMEEvent next() {
 
             if (parsed) {
                 throw new NoSuchElementException();
             }
-
-            switch(state) {
-                case START_MESSAGE :
-                    if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "MIMEParser state={0}", STATE.START_MESSAGE);}
-                    state = STATE.SKIP_PREAMBLE;
-                    return MIMEEvent.START_MESSAGE;
-
-                case SKIP_PREAMBLE :
-                    if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "MIMEParser state={0}", STATE.SKIP_PREAMBLE);}
-                    skipPreamble();
-                    // fall through
-                case START_PART :
-                    if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "MIMEParser state={0}", STATE.START_PART);}
-                    state = STATE.HEADERS;
-                    return MIMEEvent.START_PART;
-
-                case HEADERS :
-                    if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "MIMEParser state={0}", STATE.HEADERS);}
-                    InternetHeaders ih = readHeaders();
-                    state = STATE.BODY;
-                    bol = true;
-                    return new MIMEEvent.Headers(ih);
-
-                case BODY :
-                    if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "MIMEParser state={0}", STATE.BODY);}
-                    ByteBuffer buf = readBody();
-                    bol = false;
-                    return new MIMEEvent.Content(buf);
-
-                case END_PART :
-                    if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "MIMEParser state={0}", STATE.END_PART);}
-                    if (done) {
-                        state = STATE.END_MESSAGE;
-                    } else {
-                        state = STATE.START_PART;
-                    }
-                    return MIMEEvent.END_PART;
-
-                case END_MESSAGE :
-                    if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "MIMEParser state={0}", STATE.END_MESSAGE);}
-                    parsed = true;
-                    return MIMEEvent.END_MESSAGE;
-
-                default :
-                    throw new MIMEParsingException("Unknown Parser state = "+state);
-            }
+            return nextEvent();
         }
 
         @Override
@@ -168,15 +201,245 @@ class MIMEParser implements Iterable<MIMEEvent> {
     }
 
     /**
-     * Collects the headers for the current part by parsing mesage stream.
+     * Advances the parser to the next event. If the data is pushed to the
+     * parser, there may not be enough data in the buffer for the next event.
+     *
+     * @return next event, or null if more data needs to be pushed first
+     */
+    @SuppressWarnings({"fallthrough"})
+    MIMEEvent nextEvent() {
+        if (exceeded != null) {
+            throw exceeded;
+        }
+        switch(state) {
+            case START_MESSAGE :
+                if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "MIMEParser state={0}", STATE.START_MESSAGE);}
+                if (view) {
+                    count(len-pos);
+                }
+                state = STATE.SKIP_PREAMBLE;
+                return MIMEEvent.START_MESSAGE;
+
+            case SKIP_PREAMBLE :
+                if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "MIMEParser state={0}", STATE.SKIP_PREAMBLE);}
+                if (!skipPreamble()) {
+                    return null;
+                }
+                // fall through
+            case START_PART :
+                if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "MIMEParser state={0}", STATE.START_PART);}
+                if (config.maxParts != -1 && ++parts > config.maxParts) {
+                    throw limit("Message has more than " + config.maxParts + " parts");
+                }
+                state = STATE.HEADERS;
+                skipping = false;
+                partSize = 0;
+                return MIMEEvent.START_PART;
+
+            case HEADERS :
+                if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "MIMEParser state={0}", STATE.HEADERS);}
+                if (!headersAvailable()) {
+                    return null;
+                }
+                InternetHeaders ih = readHeaders();
+                state = STATE.BODY;
+                bol = true;
+                return new MIMEEvent.Headers(ih);
+
+            case BODY :
+                if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "MIMEParser state={0}", STATE.BODY);}
+                ByteBuffer buf = readBody();
+                if (buf == null) {
+                    return null;
+                }
+                bol = false;
+                return new MIMEEvent.Content(buf);
+
+            case END_PART :
+                if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "MIMEParser state={0}", STATE.END_PART);}
+                if (done) {
+                    state = STATE.END_MESSAGE;
+                } else {
+                    state = STATE.START_PART;
+                }
+                return MIMEEvent.END_PART;
+
+            case END_MESSAGE :
+                if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "MIMEParser state={0}", STATE.END_MESSAGE);}
+                parsed = true;
+                releaseBuf();
+                return MIMEEvent.END_MESSAGE;
+
+            default :
+                throw new MIMEParsingException("Unknown Parser state = "+state);
+        }
+    }
+
+    /**
+     * The content of the current part is not needed. The rest of the part
+     * is scanned for the boundary without being copied, and its content
+     * events are empty.
+     */
+    void skipBody() {
+        skipping = true;
+    }
+
+    /**
+     * Returns true once the END_MESSAGE event is generated.
+     *
+     * @return true if the whole message is parsed
+     */
+    boolean isParsed() {
+        return parsed;
+    }
+
+    /**
+     * Copies the pushed data into the buffer, as much of it as fits.
+     * Data pushed after the end of the message (epilogue) is skipped.
+     *
+     * @param src data of the message
+     */
+    void push(ByteBuffer src) {
+        if (buf == null) {
+            src.position(src.limit());
+            return;
+        }
+        int n = Math.min(src.remaining(), buf.length-len);
+        count(n);
+        src.get(buf, len, n);
+        len += n;
+    }
+
+    /**
+     * Signals that all the data of the message has been pushed.
+     */
+    void endOfInput() {
+        eof = true;
+    }
+
+    /**
+     * Collects the headers for the current part by tokenizing the header
+     * block in the buffer. The stream is read as needed, the buffer grows
+     * until the whole header block is in it.
      *
      * @return headers for the current part
      */
     private InternetHeaders readHeaders() {
-        if (!eof) {
-            fillBuf();
+        fill();
+        int end;
+        while ((end = headersEnd()) == -1 && !eof) {
+            checkHeaderSize(len-pos+1);
+            doubleBuf();
+        }
+        checkHeaderSize(((end == -1) ? len : end)-pos);
+        if (end == -1) {
+            // No more data in the stream, the body starts at the headers
+            return headers(pos, len);
+        }
+        InternetHeaders ih = headers(pos, end);
+        discardBuf(len-end);
+        return ih;
+    }
+
+    /**
+     * Tokenizes the header block. A block that is not in an array is copied
+     * to the heap first.
+     *
+     * @param from start index of the header block
+     * @param to end index (exclusive) of the header block
+     * @return headers for the current part
+     */
+    private InternetHeaders headers(int from, int to) {
+        if (buf != null) {
+            return new InternetHeaders(buf, from, to);
+        }
+        byte[] block = new byte[to-from];
+        slice(from, to-from).get(block);
+        return new InternetHeaders(block, 0, block.length);
+    }
+
+    /**
+     * Checks if the whole header block of the current part is in the buffer.
+     * It is always the case when the data is read from a stream, the stream
+     * is read as needed while parsing the headers. If the data is pushed,
+     * the buffer grows when it is full, so more data can be pushed.
+     *
+     * @return false if more data needs to be pushed first
+     */
+    private boolean headersAvailable() {
+        if (!pushed || eof || headersEnd() != -1) {
+            return true;
         }
-        return new InternetHeaders(new LineInputStream());
+        if (len == buf.length) {
+            checkHeaderSize(len-pos+1);
+            doubleBuf();
+        }
+        return false;
+    }
+
+    /**
+     * Stops the parsing if the header block is too big.
+     *
+     * @param size size of the header block, at least
+     */
+    private void checkHeaderSize(int size) {
+        if (config.maxHeaderSize != -1 && size > config.maxHeaderSize) {
+            throw limit("Part headers are bigger than " + config.maxHeaderSize + " bytes");
+        }
+    }
+
+    /**
+     * Counts the bytes read from the message, and stops the parsing
+     * if the message is too big.
+     *
+     * @param n no of bytes read
+     */
+    private void count(int n) {
+        total += n;
+        if (config.maxMessageSize != -1 && total > config.maxMessageSize) {
+            throw limit("Message is bigger than " + config.maxMessageSize + " bytes");
+        }
+    }
+
+    /**
+     * Aborts the parsing. The buffer is released, so no more data is
+     * read or buffered, and the next events fail with the same error.
+     *
+     * @param message what limit is exceeded
+     * @return the error to throw
+     */
+    private MIMELimitException limit(String message) {
+        exceeded = new MIMELimitException(message);
+        done = true;
+        releaseBuf();
+        return exceeded;
+    }
+
+    /**
+     * Finds the empty line that ends the header block. A line is
+     * terminated by a NL or CR-NL sequence. The headers are counted
+     * while they are scanned, so the parsing stops as soon as there
+     * are too many of them.
+     *
+     * @return index after the empty line, or -1 if it is not in the buffer
+     */
+    private int headersEnd() {
+        int lineStart = pos;
+        int count = 0;
+        for (int i = pos; i < len; i++) {
+            if (at(i) == '\n') {
+                if (i == lineStart || (i == lineStart+1 && at(lineStart) == '\r')) {
+                    return i+1;    // empty line ends the headers
+                }
+                // a line that starts with whitespace continues the previous header
+                if (config.maxHeaderCount != -1 && at(lineStart) != ' ' && at(lineStart) != '\t'
+                        && ++count > config.maxHeaderCount) {
+                    throw limit("Part has more than " + config.maxHeaderCount + " headers");
+                }
+                lineStart = i+1;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -184,39 +447,40 @@ class MIMEParser implements Iterable<MIMEEvent> {
      * At the end of this method, buf should have the remaining data
      * at index 0.
      *
-     * @return a chunk of the part's content
+     * @return a chunk of the part's content, or null if more data
+     *         needs to be pushed first
      *
      */
     private ByteBuffer readBody() {
-        if (!eof) {
-            fillBuf();
+        if (!fill()) {
+            return null;
         }
-        int start = match(buf, 0, len);     // matches boundary
+        int start = match(pos);     // matches boundary
         if (start == -1) {
             // No boundary is found
-            assert eof || len >= config.chunkSize;
-            int chunkSize = eof ? len : config.chunkSize;
+            assert eof || len-pos >= config.chunkSize;
+            int chunkSize = eof ? len-pos : config.chunkSize;
             if (eof) {
                 done = true;
                 throw new MIMEParsingException("Reached EOF, but there is no closing MIME boundary.");
             }
-            return adjustBuf(chunkSize, len-chunkSize);
+            return adjustBuf(chunkSize, len-pos-chunkSize);
         }
         // Found boundary.
         // Is it at the start of a line ?
-        int chunkLen = start;
-        if (bol && start == 0) {
+        int chunkLen = start-pos;
+        if (bol && start == pos) {
             // nothing to do
-        } else if (start > 0 && (buf[start-1] == '\n' || buf[start-1] =='\r')) {
+        } else if (start > pos && (at(start-1) == '\n' || at(start-1) =='\r')) {
             --chunkLen;
-            if (buf[start-1] == '\n' && start >1 && buf[start-2] == '\r') {
+            if (at(start-1) == '\n' && start > pos+1 && at(start-2) == '\r') {
                 --chunkLen;
             }
         } else {
-           return adjustBuf(start+1, len-start-1);  // boundary is not at beginning of a line
+           return adjustBuf(start-pos+1, len-start-1);  // boundary is not at beginning of a line
         }
 
-        if (start+bl+1 < len && buf[start+bl] == '-' && buf[start+bl+1] == '-') {
+        if (start+bl+1 < len && at(start+bl) == '-' && at(start+bl+1) == '-') {
             state = STATE.END_PART;
             done = true;
             return adjustBuf(chunkLen, 0);
@@ -224,31 +488,32 @@ class MIMEParser implements Iterable<MIMEEvent> {
 
         // Consider all the whitespace in boundary+whitespace+"\r\n"
         int lwsp = 0;
-        for(int i=start+bl; i < len && (buf[i] == ' ' || buf[i] == '\t'); i++) {
+        for(int i=start+bl; i < len && (at(i) == ' ' || at(i) == '\t'); i++) {
             ++lwsp;
         }
 
         // Check for \n or \r\n in boundary+whitespace+"\n" or boundary+whitespace+"\r\n"
-        if (start+bl+lwsp < len && buf[start+bl+lwsp] == '\n') {
+        if (start+bl+lwsp < len && at(start+bl+lwsp) == '\n') {
             state = STATE.END_PART;
             return adjustBuf(chunkLen, len-start-bl-lwsp-1);
-        } else if (start+bl+lwsp+1 < len && buf[start+bl+lwsp] == '\r' && buf[start+bl+lwsp+1] == '\n') {
+        } else if (start+bl+lwsp+1 < len && at(start+bl+lwsp) == '\r' && at(start+bl+lwsp+1) == '\n') {
             state = STATE.END_PART;
             return adjustBuf(chunkLen, len-start-bl-lwsp-2);
         } else if (start+bl+lwsp+1 < len) {
-            return adjustBuf(chunkLen+1, len-chunkLen-1);       // boundary string in a part data
+            return adjustBuf(chunkLen+1, len-pos-chunkLen-1);       // boundary string in a part data
         } else if (eof) {
             done = true;
             throw new MIMEParsingException("Reached EOF, but there is no closing MIME boundary.");
         }
 
         // Some more data needed to determine if it is indeed a proper boundary
-        return adjustBuf(chunkLen, len-chunkLen);
+        return adjustBuf(chunkLen, len-pos-chunkLen);
     }
 
     /**
      * Returns a chunk from the original buffer. A new buffer is
-     * created with the remaining bytes.
+     * created with the remaining bytes. For an in-memory message, the
+     * chunk is a slice of the message and the window just moves past it.
      *
      * @param chunkSize create a chunk with these many bytes
      * @param remaining bytes from the end of the buffer that need to be copied to
@@ -256,10 +521,31 @@ class MIMEParser implements Iterable<MIMEEvent> {
      * @return chunk
      */
     private ByteBuffer adjustBuf(int chunkSize, int remaining) {
-        assert buf != null;
+        assert buf != null || data != null;
         assert chunkSize >= 0;
         assert remaining >= 0;
 
+        partSize += chunkSize;
+        if (config.maxPartSize != -1 && partSize > config.maxPartSize) {
+            throw limit("Part is bigger than " + config.maxPartSize + " bytes");
+        }
+
+        if (skipping) {
+            discardBuf(remaining);
+            return EMPTY;
+        }
+        if (view) {
+            ByteBuffer chunk = (buf != null) ? ByteBuffer.wrap(buf, pos, chunkSize).slice() : slice(pos, chunkSize);
+            pos = len-remaining;
+            return chunk;
+        }
+        if (buf == null) {
+            // the direct buffer is compacted when it is filled again,
+            // once the chunk is consumed
+            ByteBuffer chunk = slice(pos, chunkSize);
+            pos = len-remaining;
+            return chunk;
+        }
         byte[] temp = buf;
         // create a new buf and adjust it without this chunk
         createBuf(remaining);
@@ -269,52 +555,148 @@ class MIMEParser implements Iterable<MIMEEvent> {
         return ByteBuffer.wrap(temp, 0, chunkSize);
     }
 
+    /**
+     * Drops the consumed bytes from the buffer. Nothing from the buffer
+     * is handed out, so the remaining bytes are just moved to its beginning.
+     *
+     * @param remaining bytes from the end of the buffer that need to be moved to
+     *        the beginning of the buffer
+     */
+    private void discardBuf(int remaining) {
+        if (view) {
+            pos = len-remaining;
+            return;
+        }
+        if (buf == null) {
+            pos = len-remaining;
+            compact();
+            return;
+        }
+        System.arraycopy(buf, len-remaining, buf, 0, remaining);
+        len = remaining;
+    }
+
+    /**
+     * Moves the unconsumed data of the direct buffer to its beginning.
+     * The chunks sliced from it must be consumed already.
+     */
+    private void compact() {
+        if (pos > 0) {
+            data.limit(len).position(pos);
+            data.compact();
+            len -= pos;
+            pos = 0;
+        }
+    }
+
+    /**
+     * Returns a slice of the data without an array.
+     *
+     * @param from start index of the slice
+     * @param n no of bytes of the slice
+     * @return slice
+     */
+    private ByteBuffer slice(int from, int n) {
+        ByteBuffer slice = data.duplicate();
+        slice.limit(from+n).position(from);
+        return slice.slice();
+    }
+
+    /**
+     * @param i index in the buffer
+     * @return byte at the index, in the array or the ByteBuffer
+     */
+    private byte at(int i) {
+        return (buf != null) ? buf[i] : data.get(i);
+    }
+
+    /**
+     * Finds the boundary in the rest of the buffer.
+     *
+     * @param from start index
+     * @return -1 if there is no match or index where the match starts
+     */
+    private int match(int from) {
+        return (buf != null) ? matcher.match(buf, from, len) : matcher.match(data, from, len);
+    }
+
     private void createBuf(int min) {
-        buf = new byte[Math.max(min, capacity)];
+        buf = (pool != null) ? pool.acquire(Math.max(min, capacity)) : new byte[Math.max(min, capacity)];
+    }
+
+    /**
+     * Gives the buffer back to the pool once the message is parsed.
+     */
+    private void releaseBuf() {
+        if (view) {
+            // the message is owned by the application
+        } else if (data != null) {
+            DirectBufferPool directPool = config.getChannelBufferPool();
+            if (directPool != null) {
+                directPool.release(data);
+            }
+        } else {
+            recycle(buf);
+        }
+        buf = null;
+        data = null;
+    }
+
+    private void recycle(byte[] temp) {
+        if (pool != null) {
+            pool.release(temp);
+        }
     }
 
     /**
      * Skips the preamble to find the first attachment part
+     *
+     * @return false if more data needs to be pushed first
      */
-    private void skipPreamble() {
+    private boolean skipPreamble() {
 
+        int from = pos;     // false matches before it are already checked
         while(true) {
-            if (!eof) {
-                fillBuf();
+            if (!fill()) {
+                return false;
             }
-            int start = match(buf, 0, len);     // matches boundary
+            int start = match(from);     // matches boundary
             if (start == -1) {
                 // No boundary is found
                 if (eof) {
                     throw new MIMEParsingException("Missing start boundary");
                 } else {
-                    adjustBuf(len-bl+1, bl-1);
+                    discardBuf(bl-1);
+                    from = pos;
                     continue;
                 }
             }
 
-            if (start > config.chunkSize) {
-                adjustBuf(start, len-start);
+            if (start-pos > config.chunkSize) {
+                // make sure there is enough data after the boundary
+                discardBuf(len-start);
+                from = pos;
                 continue;
             }
             // Consider all the whitespace boundary+whitespace+"\r\n"
             int lwsp = 0;
-            for(int i=start+bl; i < len && (buf[i] == ' ' || buf[i] == '\t'); i++) {
+            for(int i=start+bl; i < len && (at(i) == ' ' || at(i) == '\t'); i++) {
                 ++lwsp;
             }
             // Check for \n or \r\n
-            if (start+bl+lwsp < len && (buf[start+bl+lwsp] == '\n' || buf[start+bl+lwsp] == '\r') ) {
-                if (buf[start+bl+lwsp] == '\n') {
-                    adjustBuf(start+bl+lwsp+1, len-start-bl-lwsp-1);
+            if (start+bl+lwsp < len && (at(start+bl+lwsp) == '\n' || at(start+bl+lwsp) == '\r') ) {
+                if (at(start+bl+lwsp) == '\n') {
+                    discardBuf(len-start-bl-lwsp-1);
                     break;
-                } else if (start+bl+lwsp+1 < len && buf[start+bl+lwsp+1] == '\n') {
-                    adjustBuf(start+bl+lwsp+2, len-start-bl-lwsp-2);
+                } else if (start+bl+lwsp+1 < len && at(start+bl+lwsp+1) == '\n') {
+                    discardBuf(len-start-bl-lwsp-2);
                     break;
                 }
             }
-            adjustBuf(start+1, len-start-1);
+            from = start+1;     // not a boundary line, search the rest of the buffer
         }
         if (LOGGER.isLoggable(Level.FINE)) {LOGGER.log(Level.FINE, "Skipped the preamble. buffer len={0}", len);}
+        return true;
     }
 
     private static byte[] getBytes(String s) {
@@ -328,80 +710,20 @@ class MIMEParser implements Iterable<MIMEEvent> {
         return bytes;
     }
 
-        /**
-     * Boyer-Moore search method. Copied from java.util.regex.Pattern.java
-     *
-     * Pre calculates arrays needed to generate the bad character
-     * shift and the good suffix shift. Only the last seven bits
-     * are used to see if chars match; This keeps the tables small
-     * and covers the heavily used ASCII range, but occasionally
-     * results in an aliased match for the bad character shift.
-     */
-    private void compileBoundaryPattern() {
-        int i, j;
-
-        // Precalculate part of the bad character shift
-        // It is a table for where in the pattern each
-        // lower 7-bit value occurs
-        for (i = 0; i < bndbytes.length; i++) {
-            bcs[bndbytes[i]&0x7F] = i + 1;
-        }
-
-        // Precalculate the good suffix shift
-        // i is the shift amount being considered
-NEXT:   for (i = bndbytes.length; i > 0; i--) {
-            // j is the beginning index of suffix being considered
-            for (j = bndbytes.length - 1; j >= i; j--) {
-                // Testing for good suffix
-                if (bndbytes[j] == bndbytes[j-i]) {
-                    // src[j..len] is a good suffix
-                    gss[j-1] = i;
-                } else {
-                    // No match. The array has already been
-                    // filled up with correct values before.
-                    continue NEXT;
-                }
-            }
-            // This fills up the remaining of optoSft
-            // any suffix can not have larger shift amount
-            // then its sub-suffix. Why???
-            while (j > 0) {
-                gss[--j] = i;
-            }
-        }
-        // Set the guard value because of unicode compression
-        gss[bndbytes.length -1] = 1;
-    }
-
     /**
-     * Finds the boundary in the given buffer using Boyer-Moore algo.
-     * Copied from java.util.regex.Pattern.java
-     *
-     * @param mybuf boundary to be searched in this mybuf
-     * @param off start index in mybuf
-     * @param len number of bytes in mybuf
+     * Makes sure that the buffer is full or that EOF is reached. The
+     * stream is read if there is one, otherwise the data is pushed.
      *
-     * @return -1 if there is no match or index where the match starts
+     * @return false if more data needs to be pushed first
      */
-    private int match(byte[] mybuf, int off, int len) {
-        int last = len - bndbytes.length;
-
-        // Loop over all possible match positions in text
-NEXT:   while (off <= last) {
-            // Loop over pattern from right to left
-            for (int j = bndbytes.length - 1; j >= 0; j--) {
-                byte ch = mybuf[off+j];
-                if (ch != bndbytes[j]) {
-                    // Shift search to the right by the maximum of the
-                    // bad character shift and the good suffix shift
-                    off += Math.max(j + 1 - bcs[ch&0x7F], gss[j]);
-                    continue NEXT;
-                }
+    private boolean fill() {
+        if (!eof) {
+            if (pushed) {
+                return len == buf.length;
             }
-            // Entire pattern matched starting at off
-            return off;
+            fillBuf();
         }
-        return -1;
+        return true;
     }
 
     /**
@@ -410,10 +732,14 @@ NEXT:   while (off <= last) {
     private void fillBuf() {
         if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "Before fillBuf() buffer len={0}", len);}
         assert !eof;
-        while(len < buf.length) {
+        if (buf == null) {
+            compact();
+        }
+        int capacity = (buf != null) ? buf.length : data.capacity();
+        while(len < capacity) {
             int read;
             try {
-                read = in.read(buf, len, buf.length-len);
+                read = read();
             } catch(IOException ioe) {
                 throw new MIMEParsingException(ioe);
             }
@@ -421,73 +747,54 @@ NEXT:   while (off <= last) {
                 eof = true;
                 try {
                     if (LOGGER.isLoggable(Level.FINE)) {LOGGER.fine("Closing the input stream.");}
-                    in.close();
+                    Closeable input = (channel != null) ? channel : in;
+                    if (input != null) {
+                        input.close();
+                    }
                 } catch(IOException ioe) {
                     throw new MIMEParsingException(ioe);
                 }
                 break;
             } else {
+                count(read);
                 len += read;
             }
         }
         if (LOGGER.isLoggable(Level.FINER)) {LOGGER.log(Level.FINER, "After fillBuf() buffer len={0}", len);}
     }
 
-    private void doubleBuf() {
-        byte[] temp = new byte[2*len];
-        System.arraycopy(buf, 0, temp, 0, len);
-        buf = temp;
-        if (!eof) {
-            fillBuf();
+    /*
+     * Reads the input after the data in the buffer
+     */
+    private int read() throws IOException {
+        if (buf == null) {
+            data.limit(data.capacity()).position(len);
+            return channel.read(data);
         }
+        return in.read(buf, len, buf.length-len);
     }
 
-    class LineInputStream {
-        private int offset;
-
-        /*
-         * Read a line containing only ASCII characters from the input
-         * stream. A line is terminated by a CR or NL or CR-NL sequence.
-         * A common error is a CR-CR-NL sequence, which will also terminate
-         * a line.
-         * The line terminator is not returned as part of the returned
-         * String. Returns null if no data is available. <p>
-         *
-         * This class is similar to the deprecated
-         * <code>DataInputStream.readLine()</code>
-         */
-        public String readLine() throws IOException {
-
-            int hdrLen = 0;
-            int lwsp = 0;
-            while(offset+hdrLen < len) {
-                if (buf[offset+hdrLen] == '\n') {
-                    lwsp = 1;
-                    break;
-                }
-                if (offset+hdrLen+1 == len) {
-                    doubleBuf();
-                }
-                if (offset+hdrLen+1 >= len) {   // No more data in the stream
-                    assert eof;
-                    return null;
-                }
-                if (buf[offset+hdrLen] == '\r' && buf[offset+hdrLen+1] == '\n') {
-                    lwsp = 2;
-                    break;
-                }
-                ++hdrLen;
-            }
-            if (hdrLen == 0) {
-                adjustBuf(offset+lwsp, len-offset-lwsp);
-                return null;
+    private void doubleBuf() {
+        if (eof) {
+            return;     // nothing more to read into a bigger buffer
+        }
+        if (buf == null) {
+            compact();
+            ByteBuffer temp = ByteBuffer.allocateDirect(2*len);
+            temp.put(slice(0, len));
+            DirectBufferPool directPool = config.getChannelBufferPool();
+            if (directPool != null) {
+                directPool.release(data);
             }
-
-            String hdr = new String(buf, offset, hdrLen, HEADER_ENCODING);
-            offset += hdrLen+lwsp;
-            return hdr;
+            data = temp;
+            fill();
+            return;
         }
-
+        byte[] temp = new byte[2*len];
+        System.arraycopy(buf, 0, temp, 0, len);
+        recycle(buf);
+        buf = temp;
+        fill();
     }
-    
+
 }
@@ -12,9 +12,12 @@ package org.jvnet.mimepull;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,9 +39,13 @@ public class MIMEPart implements Closeable {
     private volatile InternetHeaders headers;
     private volatile String contentId;
     private String contentType;
+    private volatile ContentType parsedContentType;
     private String contentTransferEncoding;
+    private volatile TransferDecoder decoder;       // resolved from contentTransferEncoding
+    private volatile DecodingException decodingError;
 
     volatile boolean parsed;    // part is parsed or not
+    private volatile boolean discarded;     // content is skipped by the parser
     final MIMEMessage msg;
     private final DataHead dataHead;
 
@@ -64,15 +71,7 @@ public class MIMEPart implements Closeable {
      * @return data for the part's content
      */
     public InputStream read() {
-        InputStream is = null;
-        try {
-            is = MimeUtility.decode(dataHead.read(), contentTransferEncoding);
-        } catch (DecodingException ex) { //ignore
-            if (LOGGER.isLoggable(Level.WARNING)) {
-                LOGGER.log(Level.WARNING, null, ex);
-            }
-        }
-        return is;
+        return decode(dataHead.read());
     }
 
     /**
@@ -105,15 +104,75 @@ public class MIMEPart implements Closeable {
      * @return data for the part's content
      */
     public InputStream readOnce() {
-        InputStream is = null;
-        try {
-            is = MimeUtility.decode(dataHead.readOnce(), contentTransferEncoding);
-        } catch (DecodingException ex) { //ignore
+        return decode(dataHead.readOnce());
+    }
+
+    private InputStream decode(InputStream in) {
+        DecodingException ex = decodingError;
+        if (ex != null) { //ignore
             if (LOGGER.isLoggable(Level.WARNING)) {
                 LOGGER.log(Level.WARNING, null, ex);
             }
+            return null;
         }
-        return is;
+        return decoder.decode(in);
+    }
+
+    /*
+     * Finds the decoder once, when the Content-Transfer-Encoding is known
+     */
+    private void resolveDecoder() {
+        try {
+            decoder = MimeUtility.getDecoder(contentTransferEncoding, msg.config);
+            decodingError = null;
+        } catch (DecodingException ex) {
+            decoder = null;
+            decodingError = ex;
+        }
+    }
+
+    /**
+     * Publishes the content of the part, decoded like {@link #readOnce()}.
+     * The content is read in buffers of about the configured chunk size,
+     * and only as far as the subscriber requests. The reading and the
+     * delivery happen in the thread that calls
+     * {@link Flow.Subscription#request}. Since the content can be read only
+     * once, the publisher accepts only one subscriber.
+     *
+     * @return publisher of the part's content
+     * @see #getContentPublisher(Executor)
+     */
+    public Flow.Publisher<ByteBuffer> getContentPublisher() {
+        return getContentPublisher(Runnable::run);
+    }
+
+    /**
+     * Publishes the content of the part, decoded like {@link #readOnce()}.
+     * The content is read in buffers of about the configured chunk size,
+     * and only as far as the subscriber requests. The reading and the
+     * delivery happen in tasks run by the given executor, so the requesting
+     * thread never blocks on the message's input. Since the content can be
+     * read only once, the publisher accepts only one subscriber.
+     *
+     * @param executor runs the reading and the delivery of the content
+     * @return publisher of the part's content
+     */
+    public Flow.Publisher<ByteBuffer> getContentPublisher(Executor executor) {
+        return new PullPublisher<>(() -> new PullPublisher.Source<ByteBuffer>() {
+            private final InputStream in = readOnce();
+
+            @Override
+            public ByteBuffer next() throws IOException {
+                byte[] buf = new byte[msg.config.chunkSize];
+                int len = in.read(buf);
+                return (len == -1) ? null : ByteBuffer.wrap(buf, 0, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        }, executor);
     }
 
     /**
@@ -160,6 +219,41 @@ public class MIMEPart implements Closeable {
         return contentType;
     }
 
+    /*
+     * Marks the part as not wanted, its content is not stored
+     */
+    void discard() {
+        discarded = true;
+    }
+
+    boolean isDiscarded() {
+        return discarded;
+    }
+
+    /*
+     * Returns true once the headers of the part are parsed
+     */
+    boolean hasHeaders() {
+        return headers != null;
+    }
+
+    /**
+     * Returns Content-Type MIME header for this attachment part, parsed
+     * into the media type and its parameters. It is parsed once, on the
+     * first call.
+     *
+     * @return Content-Type of the part
+     * @throws MIMEParsingException if the Content-Type cannot be parsed
+     */
+    public ContentType getParsedContentType() {
+        ContentType ct = parsedContentType;
+        if (ct == null) {
+            ct = ContentType.parse(getContentType());
+            parsedContentType = ct;
+        }
+        return ct;
+    }
+
     private void getHeaders() {
         // Trigger parsing for the part headers
         while(headers == null) {
@@ -203,10 +297,11 @@ public class MIMEPart implements Closeable {
      */
     void setHeaders(InternetHeaders headers) {
         this.headers = headers;
-        List<String> ct = getHeader("Content-Type");
-        this.contentType = (ct == null) ? "application/octet-stream" : ct.get(0);
-        List<String> cte = getHeader("Content-Transfer-Encoding");
-        this.contentTransferEncoding = (cte == null) ? "binary" : cte.get(0);
+        String ct = headers.getFirst(InternetHeaders.WellKnown.CONTENT_TYPE);
+        this.contentType = (ct == null) ? "application/octet-stream" : ct;
+        String cte = headers.getFirst(InternetHeaders.WellKnown.CONTENT_TRANSFER_ENCODING);
+        this.contentTransferEncoding = (cte == null) ? "binary" : cte;
+        resolveDecoder();
     }
 
     /**
@@ -241,6 +336,7 @@ public class MIMEPart implements Closeable {
      */
     void setContentTransferEncoding(String cte) {
         this.contentTransferEncoding = cte;
+        resolveDecoder();
     }
 
     /**
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Selects the parts of a {@link MIMEMessage} whose content is kept. The
+ * content of the other parts is skipped by the parser without being
+ * stored in memory or in temp files. The filter is called once the
+ * headers of a part are parsed, so it can look at the part's headers.
+ *
+ * <pre>
+ * for e.g.:
+ * {@code
+ *
+ * MIMEMessage mm = new MIMEMessage(in, boundary);
+ * mm.setPartFilter(MIMEPartFilter.indexes(0).or(MIMEPartFilter.contentIds(cid)));
+ * }</pre>
+ *
+ * @see MIMEMessage#setPartFilter(MIMEPartFilter)
+ */
+@FunctionalInterface
+public interface MIMEPartFilter {
+
+    /**
+     * Decides if the content of a part is kept.
+     *
+     * @param index sequential order of the part. starts with zero.
+     * @param part  the part, its headers are available
+     * @return true if the content is kept, false if it is skipped
+     */
+    boolean accept(int index, MIMEPart part);
+
+    /**
+     * Returns a filter that keeps the parts that are accepted by this
+     * filter or by the other one.
+     *
+     * @param other another filter
+     * @return the combined filter
+     */
+    default MIMEPartFilter or(MIMEPartFilter other) {
+        return (index, part) -> accept(index, part) || other.accept(index, part);
+    }
+
+    /**
+     * Returns a filter that keeps the parts at the given indexes.
+     *
+     * @param indexes sequential order of the parts. starts with zero.
+     * @return the filter
+     */
+    static MIMEPartFilter indexes(int... indexes) {
+        int[] sorted = indexes.clone();
+        Arrays.sort(sorted);
+        return (index, part) -> Arrays.binarySearch(sorted, index) >= 0;
+    }
+
+    /**
+     * Returns a filter that keeps the parts with the given Content-IDs.
+     *
+     * @param contentIds Content-IDs of the parts, without {@code <, >}
+     * @return the filter
+     */
+    static MIMEPartFilter contentIds(String... contentIds) {
+        Set<String> cids = new HashSet<>(Arrays.asList(contentIds));
+        return (index, part) -> cids.contains(part.getContentId());
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Non-blocking MIME parser. The message data is pushed to the parser as it
+ * arrives (for e.g. from a selector thread), and the parser advances as far
+ * as the data allows without ever blocking. The parsed parts are delivered
+ * either to a {@link Handler} or to a {@link MIMEMessage}.
+ *
+ * <pre>
+ * for e.g.:
+ * {@code
+ *
+ * MIMEStreamParser parser = new MIMEStreamParser(boundary, config);
+ * MIMEMessage msg = parser.getMessage();   // hand it over to a worker thread
+ * ...
+ * while (channel.read(buf) != -1) {
+ *   buf.flip();
+ *   parser.feed(buf);
+ *   buf.clear();
+ * }
+ * parser.endOfInput();
+ * }</pre>
+ *
+ * <p>
+ * Reading the parts of the message blocks the reading thread until the
+ * data is pushed. An instance is not thread safe, the data must be pushed
+ * by one thread at a time.
+ */
+public final class MIMEStreamParser {
+
+    /**
+     * Receives the parsing events of the pushed message.
+     */
+    public interface Handler {
+
+        /**
+         * A new part starts.
+         */
+        default void startPart() {
+        }
+
+        /**
+         * The headers of the current part are parsed.
+         *
+         * @param headers headers of the part
+         */
+        default void headers(List<? extends Header> headers) {
+        }
+
+        /**
+         * A chunk of the current part's content is parsed. The content is
+         * not decoded.
+         *
+         * @param data chunk of the content, owned by the handler
+         */
+        void content(ByteBuffer data);
+
+        /**
+         * The current part ends.
+         */
+        default void endPart() {
+        }
+
+        /**
+         * The message ends.
+         */
+        default void endMessage() {
+        }
+    }
+
+    private final MIMEParser parser;
+    private final Handler handler;
+    private final MIMEMessage message;
+
+    /**
+     * Creates a parser that delivers the events to the given handler.
+     *
+     * @param boundary the separator for parts(pass it without --)
+     * @param config   various configuration parameters
+     * @param handler  receives the parsing events
+     */
+    public MIMEStreamParser(String boundary, MIMEConfig config, Handler handler) {
+        this.parser = new MIMEParser(boundary, config);
+        this.handler = handler;
+        this.message = null;
+    }
+
+    /**
+     * Creates a parser that stores the parts in a {@link MIMEMessage}.
+     *
+     * @param boundary the separator for parts(pass it without --)
+     * @param config   various configuration parameters
+     * @see #getMessage()
+     */
+    public MIMEStreamParser(String boundary, MIMEConfig config) {
+        this.parser = new MIMEParser(boundary, config);
+        this.handler = null;
+        this.message = new MIMEMessage(parser, config);
+    }
+
+    /**
+     * Returns the message that receives the parts.
+     *
+     * @return the message, or null if the events go to a {@link Handler}
+     */
+    public MIMEMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * Parses the given data. All the remaining bytes of the buffer are
+     * consumed.
+     *
+     * @param src next data of the message
+     * @throws MIMEParsingException if the message cannot be parsed
+     */
+    public void feed(ByteBuffer src) {
+        do {
+            try {
+                parser.push(src);
+            } catch (MIMEParsingException e) {
+                fail(e);        // the message is too big
+            }
+            advance();
+        } while (src.hasRemaining());
+    }
+
+    /**
+     * Signals that all the data of the message has been fed, and parses
+     * the rest of it.
+     *
+     * @throws MIMEParsingException if the message is not complete
+     */
+    public void endOfInput() {
+        parser.endOfInput();
+        advance();
+        if (!parser.isParsed()) {
+            fail(new MIMEParsingException("Reached EOF, but there is no closing MIME boundary."));
+        }
+    }
+
+    /**
+     * Returns {@code true} once the closing boundary has been parsed.
+     * Any data fed after that is ignored.
+     *
+     * @return true if the whole message is parsed
+     */
+    public boolean isDone() {
+        return parser.isParsed();
+    }
+
+    private void advance() {
+        try {
+            while (!parser.isParsed()) {
+                MIMEEvent event = parser.nextEvent();
+                if (event == null) {
+                    return;         // needs more data
+                }
+                if (message != null) {
+                    message.push(event);
+                } else {
+                    dispatch(event);
+                }
+            }
+        } catch (MIMEParsingException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(MIMEParsingException e) {
+        if (message != null) {
+            message.fail(e);
+        }
+        throw e;
+    }
+
+    private void dispatch(MIMEEvent event) {
+        switch (event.getEventType()) {
+            case START_MESSAGE:
+                break;
+            case START_PART:
+                handler.startPart();
+                break;
+            case HEADERS:
+                handler.headers(((MIMEEvent.Headers) event).getHeaders().getAllHeaders());
+                break;
+            case CONTENT:
+                handler.content(((MIMEEvent.Content) event).getData());
+                break;
+            case END_PART:
+                handler.endPart();
+                break;
+            case END_MESSAGE:
+                handler.endMessage();
+                break;
+            default:
+                throw new MIMEParsingException("Unknown Parser state = " + event.getEventType());
+        }
+    }
+
+}
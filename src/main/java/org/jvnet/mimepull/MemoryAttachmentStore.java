@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Store of the parts on the heap, in growing arrays.
+ */
+final class MemoryAttachmentStore extends AttachmentStore {
+
+    @Override
+    public Storage create() {
+        return new MemoryStorage();
+    }
+
+    private static final class MemoryStorage implements Storage {
+        // guarded by this
+        private byte[] data = new byte[8192];
+        private long size;
+
+        @Override
+        public synchronized void write(long position, ByteBuffer src) throws IOException {
+            long end = position + src.remaining();
+            if (end > Integer.MAX_VALUE - 8) {
+                throw new IOException("Part is too big for the memory store");
+            }
+            if (end > data.length) {
+                data = Arrays.copyOf(data, (int) Math.min(Math.max(end, 2L * data.length), Integer.MAX_VALUE - 8));
+            }
+            src.get(data, (int) position, src.remaining());
+            size = Math.max(size, end);
+        }
+
+        @Override
+        public synchronized void read(long position, ByteBuffer dst) throws IOException {
+            if (position + dst.remaining() > size) {
+                throw new EOFException();
+            }
+            dst.put(data, (int) position, dst.remaining());
+        }
+
+        @Override
+        public synchronized void close() {
+            data = new byte[0];
+            size = 0;
+        }
+    }
+}
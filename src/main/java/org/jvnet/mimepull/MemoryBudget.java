@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Memory budget for the in-memory content of the parts, shared by all the
+ * messages whose {@link MIMEConfig} references it. When the parts in
+ * memory take more than the capacity, the content of some parts is
+ * written to temp files until the budget is met again, so the memory used
+ * for the attachments stays bounded however many messages are parsed
+ * at the same time.
+ *
+ * <p>
+ * The per part {@link MIMEConfig#setMemoryThreshold(long) memory threshold}
+ * still applies. Parts that are consumed with {@link MIMEPart#readOnce()},
+ * and parts of messages that are kept only in memory, are never spilled,
+ * but their content counts against the budget until it is read.
+ *
+ * <pre>
+ * for e.g.:
+ * {@code
+ *
+ * MemoryBudget budget = new MemoryBudget(64L << 20, MemoryBudget.SpillPolicy.LARGEST_FIRST);
+ * ...
+ * MIMEConfig config = new MIMEConfig();
+ * config.setMemoryBudget(budget);
+ * }</pre>
+ */
+public final class MemoryBudget {
+
+    private static final Logger LOGGER = Logger.getLogger(MemoryBudget.class.getName());
+
+    /**
+     * Which part is written to a temp file when the budget is exceeded.
+     */
+    public enum SpillPolicy {
+        /** The part with the most content in memory. */
+        LARGEST_FIRST,
+        /** The part that has been in memory for the longest time. */
+        OLDEST_FIRST
+    }
+
+    private final long capacity;
+    private final SpillPolicy policy;
+
+    // guarded by this
+    private long used;
+    private final Set<DataHead> holders = new LinkedHashSet<>();   // in the order they are charged
+
+    /**
+     * Creates a budget that spills the largest parts first.
+     *
+     * @param capacity maximum no of bytes in memory for all the parts
+     */
+    public MemoryBudget(long capacity) {
+        this(capacity, SpillPolicy.LARGEST_FIRST);
+    }
+
+    /**
+     * Creates a budget.
+     *
+     * @param capacity maximum no of bytes in memory for all the parts
+     * @param policy which parts are spilled first
+     */
+    public MemoryBudget(long capacity, SpillPolicy policy) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("policy");
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    /**
+     * Returns the capacity of this budget.
+     *
+     * @return maximum no of bytes in memory for all the parts
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the policy of this budget.
+     *
+     * @return which parts are spilled first
+     */
+    public SpillPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the content bytes that are in memory now.
+     *
+     * @return no of bytes in memory for all the parts
+     */
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    /**
+     * Accounts in-memory content of a part, and spills parts until the
+     * budget is met. It must not be called while holding the lock of a
+     * DataHead, as spilling locks the victims.
+     *
+     * @param head part content
+     * @param n no of bytes added in memory
+     */
+    void charge(DataHead head, long n) {
+        synchronized (this) {
+            if (head.budgeted == 0) {
+                holders.add(head);
+            }
+            head.budgeted += n;
+            used += n;
+        }
+        DataHead victim;
+        while ((victim = selectVictim()) != null) {
+            try {
+                victim.spill();
+            } catch (MIMEParsingException e) {
+                // the part stays in memory, don't let it fail another message
+                if (LOGGER.isLoggable(Level.WARNING)) {
+                    LOGGER.log(Level.WARNING, "Cannot spill part content to a temp file", e);
+                }
+                release(victim);
+            }
+        }
+    }
+
+    /**
+     * Gives back some of the budget of a part.
+     *
+     * @param head part content
+     * @param n no of bytes that are no longer in memory
+     */
+    synchronized void release(DataHead head, long n) {
+        n = Math.min(n, head.budgeted);
+        head.budgeted -= n;
+        used -= n;
+        if (head.budgeted == 0) {
+            holders.remove(head);
+        }
+    }
+
+    /**
+     * Gives back all the budget of a part.
+     *
+     * @param head part content
+     */
+    synchronized void release(DataHead head) {
+        release(head, head.budgeted);
+    }
+
+    /*
+     * Finds the part to spill, null if the budget is met or nothing can be spilled
+     */
+    private synchronized DataHead selectVictim() {
+        if (used <= capacity) {
+            return null;
+        }
+        DataHead victim = null;
+        for (DataHead head : holders) {
+            if (!head.isSpillable()) {
+                continue;
+            }
+            if (policy == SpillPolicy.OLDEST_FIRST) {
+                return head;
+            }
+            if (victim == null || head.budgeted > victim.budgeted) {
+                victim = head;
+            }
+        }
+        return victim;
+    }
+
+}
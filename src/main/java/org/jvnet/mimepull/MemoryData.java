@@ -11,12 +11,6 @@
 package org.jvnet.mimepull;
 
 import java.nio.ByteBuffer;
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
  * Keeps the Part's partial content data in memory.
@@ -25,13 +19,9 @@ import java.util.logging.Logger;
  * @author Jitendra Kotamraju
  */
 final class MemoryData implements Data {
-    private static final Logger LOGGER = Logger.getLogger(MemoryData.class.getName());
-
-    private final byte[] data;
+    private volatile byte[] data;
     private final int len;
     private final MIMEConfig config;
-    // default to false to avoid memory leak through java.io.DeleteOnExitHook.files
-    private static final boolean DELETE_ON_EXIT = Boolean.getBoolean("org.jvnet.mimepull.deletetemponexit");
 
     MemoryData(ByteBuffer buf, MIMEConfig config) {
         data = buf.array();
@@ -51,47 +41,44 @@ final class MemoryData implements Data {
     }
 
     @Override
-    public long writeTo(DataFile file) {
-        return file.writeTo(data, 0, len);
+    public void read(int position, byte[] dst, int off, int length) {
+        System.arraycopy(data, position, dst, off, length);
     }
 
     @Override
-    public Data createNext(DataHead dataHead, ByteBuffer buf) {
-        if (!config.isOnlyMemory() && dataHead.inMemory >= config.memoryThreshold) {
-            try {
-                String prefix = config.getTempFilePrefix();
-                String suffix = config.getTempFileSuffix();
-                File tempFile = createTempFile(prefix, suffix, config.getTempDir());
-                // delete the temp file when VM exits as a last resort for file clean up
-                if (DELETE_ON_EXIT) {
-                    tempFile.deleteOnExit();
-                }
-                if (LOGGER.isLoggable(Level.FINE)) {
-                    LOGGER.log(Level.FINE, "Created temp file = {0}", tempFile);
-                }
-                dataHead.dataFile = new DataFile(tempFile);
-            } catch (IOException ioe) {
-                throw new MIMEParsingException(ioe);
-            }
+    public boolean hasArray() {
+        return true;
+    }
 
-            if (dataHead.head != null) {
-                for (Chunk c = dataHead.head; c != null; c = c.next) {
-                    long pointer = c.data.writeTo(dataHead.dataFile);
-                    c.data = new FileData(dataHead.dataFile, pointer, len);
-                }
-            }
-            return new FileData(dataHead.dataFile, buf);
-        } else {
-            return new MemoryData(buf, config);
+    @Override
+    public int offset() {
+        return 0;
+    }
+
+    /*
+     * Gives the chunk back to the buffer pool (if any)
+     */
+    @Override
+    public synchronized void close() {
+        BufferPool pool = config.getBufferPool();
+        if (pool != null) {
+            pool.release(data);
         }
+        data = null;
+    }
+
+    @Override
+    public ByteBuffer buffer() {
+        return ByteBuffer.wrap(data, 0, len);
     }
 
-    private static File createTempFile(String prefix, String suffix, File dir) throws IOException {
-        if (dir != null) {
-            Path path = dir.toPath();
-            return Files.createTempFile(path, prefix, suffix).toFile();
+    @Override
+    public Data createNext(DataHead dataHead, ByteBuffer buf) {
+        if (!config.isOnlyMemory() && dataHead.inMemory >= config.memoryThreshold) {
+            dataHead.spill();
+            return dataHead.newFileData(buf);
         } else {
-            return Files.createTempFile(prefix, suffix).toFile();
+            return dataHead.newMemoryData(buf);
         }
     }
 }
@@ -11,6 +11,14 @@
 package org.jvnet.mimepull;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
 
 
 /**
@@ -115,42 +123,81 @@ final class MimeUtility {
 	PropUtil.getBooleanSystemProperty(
 	    "mail.mime.ignoreunknownencoding", false);
 
+    // returns the stream as is
+    private static final TransferDecoder IDENTITY = new BuiltinDecoder(in -> in, "binary", "7bit", "8bit");
+
+    // lower case encoding -> decoder
+    private static final Map<String, TransferDecoder> DECODERS = loadDecoders();
+
+    private static Map<String, TransferDecoder> loadDecoders() {
+        Map<String, TransferDecoder> decoders = new HashMap<>();
+        register(decoders, IDENTITY);
+        register(decoders, new BuiltinDecoder(BASE64DecoderStream::new, "base64"));
+        register(decoders, new BuiltinDecoder(QPDecoderStream::new, "quoted-printable"));
+        register(decoders, new BuiltinDecoder(UUDecoderStream::new, "uuencode", "x-uuencode", "x-uue"));
+        List<TransferDecoder> providers = FactoryFinder.findAll(TransferDecoder.class);
+        // the first provider wins
+        for (int i = providers.size() - 1; i >= 0; i--) {
+            register(decoders, providers.get(i));
+        }
+        return decoders;
+    }
+
+    private static void register(Map<String, TransferDecoder> decoders, TransferDecoder decoder) {
+        for (String encoding : decoder.getEncodings()) {
+            decoders.put(encoding.toLowerCase(Locale.ROOT), decoder);
+        }
+    }
+
     /**
-     * Decode the given input stream. The Input stream returned is
-     * the decoded input stream. All the encodings defined in RFC 2045
-     * are supported here. They include "base64", "quoted-printable",
-     * "7bit", "8bit", and "binary". In addition, "uuencode" is also
-     * supported. <p>
+     * Finds the decoder for the given encoding. All the encodings defined
+     * in RFC 2045 are supported here. They include "base64",
+     * "quoted-printable", "7bit", "8bit", and "binary". In addition,
+     * "uuencode" is also supported. The decoders of the config come first,
+     * then the decoders that are found using ServiceLoader. <p>
      *
      * In the current implementation, if the
      * <code>mail.mime.ignoreunknownencoding</code> system property is set to
      * <code>"true"</code>, unknown encoding values are ignored and the
-     * original InputStream is returned.
+     * returned decoder returns the original InputStream.
      *
-     * @param	is		input stream
      * @param	encoding	the encoding of the stream.
-     * @return			decoded input stream.
+     * @param	config		config of the message
+     * @return			the decoder
      * @exception DecodingException	if the encoding is unknown
      */
-    public static InputStream decode(InputStream is, String encoding)
+    static TransferDecoder getDecoder(String encoding, MIMEConfig config)
 		throws DecodingException {
-	if (encoding.equalsIgnoreCase("base64"))
-	    return new BASE64DecoderStream(is);
-	else if (encoding.equalsIgnoreCase("quoted-printable"))
-	    return new QPDecoderStream(is);
-	else if (encoding.equalsIgnoreCase("uuencode") ||
-		 encoding.equalsIgnoreCase("x-uuencode") ||
-		 encoding.equalsIgnoreCase("x-uue"))
-	    return new UUDecoderStream(is);
-	else if (encoding.equalsIgnoreCase("binary") ||
-		 encoding.equalsIgnoreCase("7bit") ||
-		 encoding.equalsIgnoreCase("8bit"))
-	    return is;
-	else {
-	    if (!ignoreUnknownEncoding) {
+        TransferDecoder decoder = config.getTransferDecoder(encoding);
+        if (decoder == null) {
+            decoder = DECODERS.get(encoding.toLowerCase(Locale.ROOT));
+        }
+        if (decoder == null) {
+            if (!ignoreUnknownEncoding) {
                 throw new DecodingException("Unknown encoding: " + encoding);
             }
-	    return is;
-	}
+            decoder = IDENTITY;
+        }
+        return decoder;
+    }
+
+    private static final class BuiltinDecoder extends TransferDecoder {
+        private final UnaryOperator<InputStream> factory;
+        private final Set<String> encodings;
+
+        BuiltinDecoder(UnaryOperator<InputStream> factory, String... encodings) {
+            this.factory = factory;
+            this.encodings = new HashSet<>(Arrays.asList(encodings));
+        }
+
+        @Override
+        public Set<String> getEncodings() {
+            return encodings;
+        }
+
+        @Override
+        public InputStream decode(InputStream in) {
+            return factory.apply(in);
+        }
     }
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps the Part's partial content data in a file that is written in the
+ * background. The data is read from memory until it is persisted. The
+ * array is not given back to the buffer pool, a reader may still have it.
+ */
+final class PendingFileData implements Data {
+    private final DataFile file;
+    private final long pointer;         // read position
+    private final int length;
+    private volatile byte[] data;       // from index 0, null once it is persisted
+
+    PendingFileData(DataFile file, byte[] data, int length, SpillWriter writer) {
+        this.file = file;
+        this.length = length;
+        this.data = data;
+        this.pointer = file.writeBehind(data, 0, length, writer, () -> this.data = null);
+    }
+
+    @Override
+    public byte[] read() {
+        byte[] buf = data;
+        if (buf != null) {
+            return buf;
+        }
+        buf = new byte[length];
+        file.read(pointer, buf, 0, length);
+        return buf;
+    }
+
+    @Override
+    public void read(int position, byte[] dst, int off, int len) {
+        byte[] buf = data;
+        if (buf != null) {
+            System.arraycopy(buf, position, dst, off, len);
+        } else {
+            file.read(pointer + position, dst, off, len);
+        }
+    }
+
+    @Override
+    public boolean hasArray() {
+        return data != null;
+    }
+
+    @Override
+    public int offset() {
+        return 0;
+    }
+
+    /*
+     * This shouldn't be called
+     */
+    @Override
+    public ByteBuffer buffer() {
+        throw new IllegalStateException();
+    }
+
+    /*
+     * The file is owned by the DataHead
+     */
+    @Override
+    public void close() {
+        data = null;
+    }
+
+    @Override
+    public int size() {
+        return length;
+    }
+
+    @Override
+    public Data createNext(DataHead dataHead, ByteBuffer buf) {
+        return dataHead.newFileData(buf);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Flow.Publisher} over a pull based source. The source is pulled
+ * only as far as the subscriber's demand goes, so the parsing of the
+ * message advances with the subscriber. The items are pulled and
+ * delivered on the given executor, one task at a time per subscription.
+ *
+ * @param <T> the published item type
+ */
+final class PullPublisher<T> implements Flow.Publisher<T> {
+
+    /**
+     * Source of the items of one subscription.
+     *
+     * @param <T> the item type
+     */
+    interface Source<T> {
+
+        /**
+         * Returns the next item, may block until it is parsed.
+         *
+         * @return next item, or null at the end
+         * @throws Exception if the item cannot be produced
+         */
+        T next() throws Exception;
+
+        /**
+         * Releases the source when the subscription ends.
+         *
+         * @throws Exception if the source cannot be released
+         */
+        default void close() throws Exception {
+        }
+    }
+
+    /**
+     * Opens the source of a new subscription.
+     *
+     * @param <T> the item type
+     */
+    interface SourceFactory<T> {
+        Source<T> open() throws Exception;
+    }
+
+    private final SourceFactory<T> factory;
+    private final Executor executor;
+
+    PullPublisher(SourceFactory<T> factory, Executor executor) {
+        this.factory = factory;
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        Subscription<T> subscription = new Subscription<>(subscriber, factory, executor);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private static final class Subscription<T> implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final SourceFactory<T> factory;
+        private final Executor executor;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable badRequest;
+        private Source<T> source;
+        private boolean done;           // accessed only by the draining task
+
+        Subscription(Flow.Subscriber<? super T> subscriber, SourceFactory<T> factory, Executor executor) {
+            this.subscriber = subscriber;
+            this.factory = factory;
+            this.executor = executor;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("Requested "+n+" items, must be positive");
+            } else {
+                long r;
+                do {
+                    r = requested.get();
+                } while (!requested.compareAndSet(r, (r+n < 0) ? Long.MAX_VALUE : r+n));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    wip.set(0);
+                    cancelled = true;
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (!done) {
+                    drain();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            try {
+                if (cancelled) {
+                    finish();
+                    return;
+                }
+                if (badRequest != null) {
+                    finish();
+                    subscriber.onError(badRequest);
+                    return;
+                }
+                if (source == null) {
+                    source = factory.open();
+                }
+                long r = requested.get();
+                long emitted = 0;
+                while (emitted != r) {
+                    if (cancelled) {
+                        finish();
+                        return;
+                    }
+                    T item = source.next();
+                    if (item == null) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    subscriber.onNext(item);
+                    emitted++;
+                }
+                if (r != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+            } catch (Throwable t) {
+                if (!done) {
+                    finish();
+                    subscriber.onError(t);
+                }
+            }
+        }
+
+        private void finish() {
+            done = true;
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (Exception e) {
+                    // the subscription ends anyway
+                }
+                source = null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.lang.ref.Cleaner;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Releases the temp files of the parts as soon as they are unreachable,
+ * and optionally reports the messages that are not closed.
+ */
+final class ResourceCleaner {
+
+    private static final Logger LOGGER = Logger.getLogger(ResourceCleaner.class.getName());
+
+    private static volatile boolean leakDetection;
+    static {
+        try {
+            leakDetection = Boolean.getBoolean("org.jvnet.mimepull.leakdetection");
+        } catch (SecurityException se) {
+            if (LOGGER.isLoggable(Level.CONFIG)) {
+                LOGGER.log(Level.CONFIG, "Cannot read ''{0}'' property, using defaults.",
+                        new Object[] {"org.jvnet.mimepull.leakdetection"});
+            }
+        }
+    }
+
+    private ResourceCleaner() {
+    }
+
+    /**
+     * Switches the leak detection on or off, for the resources created
+     * after this call.
+     *
+     * @param enabled true to record where the resources are created
+     */
+    static void setLeakDetection(boolean enabled) {
+        leakDetection = enabled;
+    }
+
+    /*
+     * The cleaner thread is started on the first registration
+     */
+    private static final class Holder {
+        static final Cleaner CLEANER = Cleaner.create();
+    }
+
+    /**
+     * Runs the action when the object becomes phantom reachable, or when
+     * the returned cleanable is cleaned, whichever comes first.
+     *
+     * @param obj object to track
+     * @param action releases the resources, must not reference the object
+     * @return cleanable of the object
+     */
+    static Cleaner.Cleanable register(Object obj, Runnable action) {
+        return Holder.CLEANER.register(obj, action);
+    }
+
+    /**
+     * Records where a resource is created, if the leak detection is on.
+     *
+     * @param resource resource that must be closed
+     * @return tracker to close with the resource, null if the leak detection is off
+     */
+    static LeakTracker track(Object resource) {
+        if (!leakDetection) {
+            return null;
+        }
+        LeakTracker tracker = new LeakTracker(resource.getClass().getName());
+        tracker.cleanable = register(resource, tracker);
+        return tracker;
+    }
+
+    /**
+     * Reports a resource that becomes unreachable without being closed.
+     */
+    static final class LeakTracker implements Runnable {
+        private final Throwable createdAt;
+        private volatile boolean closed;
+        private Cleaner.Cleanable cleanable;
+
+        private LeakTracker(String name) {
+            createdAt = new Throwable(name + " created here");
+        }
+
+        void close() {
+            closed = true;
+            cleanable.clean();
+        }
+
+        @Override
+        public void run() {
+            if (!closed && LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.log(Level.WARNING, "Resource was not closed before it was garbage collected", createdAt);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Part content in extents of the {@link SpillStore} segment files. The
+ * writes are packed one after the other in the current extent of the
+ * part, the extents go back to the store when the part is closed (or
+ * when it is garbage collected).
+ */
+final class SegmentDataFile extends WeakDataFile {
+
+    private final SpillStore store;
+    // guarded by this
+    private final List<long[]> extents = new ArrayList<>();     // {address, size}
+    private long next;          // next write address in the current extent
+    private long limit;         // end of the current extent
+    private boolean closed;
+
+    SegmentDataFile(DataFile df, SpillStore store) {
+        super(df);
+        this.store = store;
+    }
+
+    @Override
+    synchronized long reserve(int length) {
+        if (closed) {
+            throw new IllegalStateException("Part content is released");
+        }
+        if (next + length > limit || extents.isEmpty()) {
+            long size = Math.max(length, store.getExtentSize());
+            next = store.allocate(size);
+            limit = next + size;
+            extents.add(new long[] {next, size});
+        }
+        long address = next;
+        next += length;
+        return address;
+    }
+
+    @Override
+    void read(long pointer, byte[] buf, int offset, int length) {
+        store.read(pointer, ByteBuffer.wrap(buf, offset, length));
+    }
+
+    @Override
+    long writeTo(long pointer, ByteBuffer src) {
+        int length = src.remaining();
+        store.write(pointer, src);
+        return pointer + length;
+    }
+
+    @Override
+    long writeTo(long pointer, ByteBuffer[] srcs) {
+        return pointer + store.write(pointer, srcs);
+    }
+
+    @Override
+    void close() {
+        unregister();
+        synchronized (this) {
+            if (!closed) {
+                closed = true;
+                for (long[] extent : extents) {
+                    store.free(extent[0], extent[1]);
+                }
+                extents.clear();
+            }
+        }
+    }
+
+    /*
+     * The segment files are shared, DataHead copies the content instead
+     */
+    @Override
+    boolean canRename() {
+        return false;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "spill store extents=" + extents.size();
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Temp file storage shared by the spilled parts. Instead of a file per
+ * part, the parts get extents of a few large segment files. The extents
+ * of a closed part are reused by the next parts, and a segment file is
+ * deleted only when it is empty and another empty segment is kept. Once
+ * the store is closed, the segment files are deleted as they get empty.
+ *
+ * <p>
+ * An address is the segment index in the high bits and the offset in
+ * the segment in the low bits, so the parts keep a single long per chunk.
+ */
+final class SpillStore {
+
+    private static final Logger LOGGER = Logger.getLogger(SpillStore.class.getName());
+    private static final int SEGMENT_SHIFT = 40;
+    private static final long OFFSET_MASK = (1L << SEGMENT_SHIFT) - 1;
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(64 * 1024).asReadOnlyBuffer();
+
+    private final File dir;
+    private final String prefix;
+    private final String suffix;
+    private final long segmentSize;
+    private final int extentSize;
+
+    // copy on write, so the reads and writes don't lock the store
+    private volatile Segment[] segments = new Segment[0];
+    private boolean closed;     // guarded by this
+
+    /**
+     * @param dir directory of the segment files, null for the default temp directory
+     * @param prefix prefix of the segment file names
+     * @param suffix suffix of the segment file names
+     * @param segmentSize size of a segment file
+     * @param extentSize minimum size of an extent given to a part
+     */
+    SpillStore(File dir, String prefix, String suffix, long segmentSize, int extentSize) {
+        if (segmentSize <= 0 || segmentSize > OFFSET_MASK) {
+            throw new IllegalArgumentException("segmentSize");
+        }
+        this.dir = dir;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.segmentSize = segmentSize;
+        this.extentSize = (int) Math.min(extentSize, segmentSize);
+    }
+
+    int getExtentSize() {
+        return extentSize;
+    }
+
+    /**
+     * Allocates an extent, first fit in the existing segments. A new
+     * segment is created if none has enough free space.
+     *
+     * @param size no of bytes
+     * @return address of the extent
+     */
+    synchronized long allocate(long size) {
+        Segment[] segs = segments;
+        for (int i = 0; i < segs.length; i++) {
+            if (segs[i] != null) {
+                long offset = segs[i].allocate(size);
+                if (offset != -1) {
+                    return ((long) i << SEGMENT_SHIFT) | offset;
+                }
+            }
+        }
+        // an extent bigger than a segment gets a segment of its own
+        Segment seg = new Segment(Math.max(size, segmentSize));
+        int i = 0;
+        while (i < segs.length && segs[i] != null) {
+            i++;
+        }
+        Segment[] copy = Arrays.copyOf(segs, Math.max(segs.length, i + 1));
+        copy[i] = seg;
+        segments = copy;
+        return ((long) i << SEGMENT_SHIFT) | seg.allocate(size);
+    }
+
+    /**
+     * Gives an extent back. An empty segment is deleted if there is
+     * another empty one.
+     *
+     * @param address address of the extent
+     * @param size no of bytes
+     */
+    synchronized void free(long address, long size) {
+        Segment[] segs = segments;
+        int index = (int) (address >>> SEGMENT_SHIFT);
+        Segment seg = segs[index];
+        seg.free(address & OFFSET_MASK, size);
+        if (!seg.isEmpty()) {
+            return;
+        }
+        if (closed) {
+            delete(index);
+            return;
+        }
+        for (int i = 0; i < segs.length; i++) {
+            if (i != index && segs[i] != null && segs[i].isEmpty()) {
+                delete(index);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Deletes the empty segment files. The others are deleted when the
+     * parts that still use them are closed.
+     */
+    synchronized void close() {
+        closed = true;
+        Segment[] segs = segments;
+        for (int i = 0; i < segs.length; i++) {
+            if (segs[i] != null && segs[i].isEmpty()) {
+                delete(i);
+            }
+        }
+    }
+
+    // guarded by this
+    private void delete(int index) {
+        Segment[] copy = segments.clone();
+        Segment seg = copy[index];
+        copy[index] = null;
+        segments = copy;
+        seg.delete();
+    }
+
+    void read(long address, ByteBuffer dst) {
+        segments[(int) (address >>> SEGMENT_SHIFT)].read(address & OFFSET_MASK, dst);
+    }
+
+    void write(long address, ByteBuffer src) {
+        segments[(int) (address >>> SEGMENT_SHIFT)].write(address & OFFSET_MASK, src);
+    }
+
+    long write(long address, ByteBuffer[] srcs) {
+        return segments[(int) (address >>> SEGMENT_SHIFT)].write(address & OFFSET_MASK, srcs);
+    }
+
+    /**
+     * Segment file with its free extents.
+     */
+    private final class Segment {
+        private final File file;
+        private final long capacity;
+        private final TreeMap<Long, Long> free = new TreeMap<>();     // offset -> length, guarded by the store
+        private volatile FileChannel channel;
+        private volatile boolean closed;
+
+        Segment(long capacity) {
+            this.capacity = capacity;
+            try {
+                file = (dir != null)
+                        ? Files.createTempFile(dir.toPath(), prefix, suffix).toFile()
+                        : Files.createTempFile(prefix, suffix).toFile();
+            } catch (IOException ioe) {
+                throw new MIMEParsingException(ioe);
+            }
+            // delete the segment file when VM exits as a last resort for file clean up
+            if (DataHead.DELETE_ON_EXIT) {
+                file.deleteOnExit();
+            }
+            try {
+                channel = open();
+                preallocate();
+            } catch (IOException ioe) {
+                delete();
+                throw new MIMEParsingException(ioe);
+            }
+            free.put(0L, capacity);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Created spill segment = {0}", file);
+            }
+        }
+
+        /*
+         * Writes the whole segment once, so the writes of the parts don't
+         * extend the file and the file system gives it contiguous blocks
+         * instead of a sparse file that fills up in the order of the parts
+         */
+        private void preallocate() throws IOException {
+            long offset = 0;
+            while (offset < capacity) {
+                ByteBuffer zeros = ZEROS.duplicate();
+                if (capacity - offset < zeros.remaining()) {
+                    zeros.limit((int) (capacity - offset));
+                }
+                offset += channel.write(zeros, offset);
+            }
+        }
+
+        private FileChannel open() throws IOException {
+            return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        long allocate(long size) {
+            for (Map.Entry<Long, Long> e : free.entrySet()) {
+                long length = e.getValue();
+                if (length >= size) {
+                    long offset = e.getKey();
+                    free.remove(offset);
+                    if (length > size) {
+                        free.put(offset + size, length - size);
+                    }
+                    return offset;
+                }
+            }
+            return -1;
+        }
+
+        void free(long offset, long size) {
+            // coalesce with the free neighbours
+            Map.Entry<Long, Long> before = free.floorEntry(offset);
+            if (before != null && before.getKey() + before.getValue() == offset) {
+                free.remove(before.getKey());
+                offset = before.getKey();
+                size += before.getValue();
+            }
+            Long after = free.get(offset + size);
+            if (after != null) {
+                free.remove(offset + size);
+                size += after;
+            }
+            free.put(offset, size);
+        }
+
+        boolean isEmpty() {
+            Long first = free.get(0L);
+            return first != null && first == capacity;
+        }
+
+        void read(long offset, ByteBuffer dst) {
+            int start = dst.position();
+            try {
+                while (dst.hasRemaining()) {
+                    if (channel.read(dst, offset + dst.position() - start) == -1) {
+                        throw new EOFException();
+                    }
+                }
+            } catch (IOException ioe) {
+                reopen(ioe);
+                throw new MIMEParsingException(ioe);
+            }
+        }
+
+        void write(long offset, ByteBuffer src) {
+            int start = src.position();
+            try {
+                while (src.hasRemaining()) {
+                    channel.write(src, offset + src.position() - start);
+                }
+            } catch (IOException ioe) {
+                reopen(ioe);
+                throw new MIMEParsingException(ioe);
+            }
+        }
+
+        /*
+         * A gathering write needs the channel position, which is shared
+         * by all the parts, positional I/O ignores it
+         */
+        synchronized long write(long offset, ByteBuffer[] srcs) {
+            try {
+                channel.position(offset);
+                long length = WeakDataFile.remaining(srcs);
+                long n = 0;
+                while (n < length) {
+                    n += channel.write(srcs);
+                }
+                return n;
+            } catch (IOException ioe) {
+                reopen(ioe);
+                throw new MIMEParsingException(ioe);
+            }
+        }
+
+        /*
+         * An interrupted read or write closes the channel for all the parts
+         */
+        private synchronized void reopen(IOException ioe) {
+            if (ioe instanceof ClosedByInterruptException && !closed && !channel.isOpen()) {
+                try {
+                    channel = open();
+                } catch (IOException e) {
+                    ioe.addSuppressed(e);
+                }
+            }
+        }
+
+        synchronized void delete() {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Deleting spill segment = {0}", file);
+            }
+            closed = true;
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException ioe) {
+                // deleted anyway
+            }
+            if (!file.delete() && LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.log(Level.INFO, "File {0} was not deleted", file.getAbsolutePath());
+            }
+        }
+    }
+
+}
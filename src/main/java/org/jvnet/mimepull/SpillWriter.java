@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Background writer of the spilled chunks. The number of pending writes
+ * is bounded: when it is reached, the parser waits for a write to finish,
+ * so the chunks waiting in memory don't grow without limit.
+ */
+final class SpillWriter {
+
+    private final Executor executor;
+    private final Semaphore permits;
+
+    SpillWriter(Executor executor, int maxPending) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("maxPending");
+        }
+        this.executor = executor;
+        this.permits = new Semaphore(maxPending);
+    }
+
+    /**
+     * Runs the write on the executor. It is run by the caller if the
+     * executor rejects it or if the caller is interrupted while waiting.
+     *
+     * @param write the write
+     */
+    void execute(Runnable write) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            write.run();
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    write.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            write.run();
+        }
+    }
+
+}
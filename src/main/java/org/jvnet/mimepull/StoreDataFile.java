@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Part content in the storage of an {@link AttachmentStore}. The storage
+ * is released when the part is closed (or when it is garbage collected).
+ */
+final class StoreDataFile extends WeakDataFile {
+
+    private static final Logger LOGGER = Logger.getLogger(StoreDataFile.class.getName());
+
+    private final AttachmentStore.Storage storage;
+    private boolean closed;     // guarded by this
+
+    StoreDataFile(DataFile df, AttachmentStore.Storage storage) {
+        super(df);
+        this.storage = storage;
+    }
+
+    @Override
+    void read(long pointer, byte[] buf, int offset, int length) {
+        try {
+            storage.read(pointer, ByteBuffer.wrap(buf, offset, length));
+        } catch (IOException ioe) {
+            throw new MIMEParsingException(ioe);
+        }
+    }
+
+    @Override
+    long writeTo(long pointer, ByteBuffer src) {
+        int length = src.remaining();
+        try {
+            storage.write(pointer, src);
+        } catch (IOException ioe) {
+            throw new MIMEParsingException(ioe);
+        }
+        return pointer + length;
+    }
+
+    /*
+     * The storage has no gathering write, the buffers are written one by one
+     */
+    @Override
+    long writeTo(long pointer, ByteBuffer[] srcs) {
+        for (ByteBuffer src : srcs) {
+            pointer = writeTo(pointer, src);
+        }
+        return pointer;
+    }
+
+    @Override
+    void close() {
+        unregister();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            storage.close();
+        } catch (IOException ioe) {
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.log(Level.INFO, "Storage " + storage + " was not released", ioe);
+            }
+        }
+    }
+
+    /*
+     * The storage is not a file, DataHead copies the content instead
+     */
+    @Override
+    boolean canRename() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "attachment store " + storage;
+    }
+}
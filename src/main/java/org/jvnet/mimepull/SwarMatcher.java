@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * SIMD within a register: the buffer is read 8 bytes at a time and all
+ * the positions holding the last boundary byte are found with a few
+ * arithmetic operations on the whole word. The full boundary is compared
+ * only at those candidate positions.
+ */
+final class SwarMatcher implements BoundaryMatcher {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+
+    private final byte[] bndbytes;
+    private final byte lastByte;
+    private final long pattern;     // last byte repeated in every lane
+
+    SwarMatcher(byte[] bndbytes) {
+        this.bndbytes = bndbytes;
+        this.lastByte = bndbytes[bndbytes.length - 1];
+        this.pattern = (lastByte & 0xFFL) * 0x0101010101010101L;
+    }
+
+    @Override
+    public int match(byte[] mybuf, int off, int len) {
+        int last = bndbytes.length - 1;
+        int i = off + last;             // candidate position of the last byte
+
+        for (; i + Long.BYTES <= len; i += Long.BYTES) {
+            long x = (long) LONGS.get(mybuf, i) ^ pattern;
+            // high bit of a lane is set iff the lane is zero, no false positives
+            long found = ~(((x & LOW7) + LOW7) | x | LOW7);
+            while (found != 0) {
+                int start = i + (Long.numberOfTrailingZeros(found) >>> 3) - last;
+                if (matchesAt(mybuf, start)) {
+                    return start;
+                }
+                found &= found - 1;
+            }
+        }
+        for (; i < len; i++) {
+            if (mybuf[i] == lastByte && matchesAt(mybuf, i - last)) {
+                return i - last;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int match(ByteBuffer mybuf, int off, int len) {
+        int last = bndbytes.length - 1;
+        int i = off + last;
+
+        for (; i + Long.BYTES <= len; i += Long.BYTES) {
+            long x = (long) BUFFER_LONGS.get(mybuf, i) ^ pattern;
+            long found = ~(((x & LOW7) + LOW7) | x | LOW7);
+            while (found != 0) {
+                int start = i + (Long.numberOfTrailingZeros(found) >>> 3) - last;
+                if (matchesAt(mybuf, start)) {
+                    return start;
+                }
+                found &= found - 1;
+            }
+        }
+        for (; i < len; i++) {
+            if (mybuf.get(i) == lastByte && matchesAt(mybuf, i - last)) {
+                return i - last;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matchesAt(byte[] mybuf, int start) {
+        for (int j = bndbytes.length - 2; j >= 0; j--) {
+            if (mybuf[start+j] != bndbytes[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matchesAt(ByteBuffer mybuf, int start) {
+        for (int j = bndbytes.length - 2; j >= 0; j--) {
+            if (mybuf.get(start+j) != bndbytes[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
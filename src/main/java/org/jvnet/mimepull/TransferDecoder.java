@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.io.InputStream;
+import java.util.Set;
+
+/**
+ * A service to decode the content of parts with a given
+ * Content-Transfer-Encoding. The decoders are looked up using
+ * ServiceLoader, and can also be added to a {@link MIMEConfig}. They take
+ * precedence over the built-in decoders for "base64", "quoted-printable"
+ * and "uuencode".
+ */
+public abstract class TransferDecoder {
+
+    /**
+     * Default constructor
+     */
+    protected TransferDecoder() {
+    }
+
+    /**
+     * Returns the Content-Transfer-Encoding values that this decoder
+     * handles, for e.g. "base64". The values are case insensitive.
+     *
+     * @return the encodings
+     */
+    public abstract Set<String> getEncodings();
+
+    /**
+     * Decodes the given stream.
+     *
+     * @param in the encoded content of a part
+     * @return decoded content
+     */
+    public abstract InputStream decode(InputStream in);
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Two-Way string matching (Crochemore-Perrin). The boundary is split at
+ * its critical factorization; the right half is compared left to right,
+ * then the left half right to left. Periodic boundaries remember how
+ * much of the left half already matched.
+ */
+final class TwoWayMatcher implements BoundaryMatcher {
+
+    private final byte[] bndbytes;
+    private final int ms;       // end of the left half of the critical factorization
+    private final int period;   // shift after a full match of the right half
+    private final int mem0;     // bytes known to match after that shift
+
+    TwoWayMatcher(byte[] bndbytes) {
+        this.bndbytes = bndbytes;
+        int l = bndbytes.length;
+
+        // maximal suffix for the natural order
+        int[] suffix = maxSuffix(bndbytes, false);
+        int ms0 = suffix[0];
+        int p0 = suffix[1];
+        // and for the opposite order
+        suffix = maxSuffix(bndbytes, true);
+        int p;
+        if (suffix[0] > ms0) {
+            ms0 = suffix[0];
+            p = suffix[1];
+        } else {
+            p = p0;
+        }
+
+        if (isPeriodic(bndbytes, p, ms0)) {
+            mem0 = l - p;
+        } else {
+            mem0 = 0;
+            p = Math.max(ms0 + 1, l - ms0 - 1) + 1;
+        }
+        this.ms = ms0;
+        this.period = p;
+    }
+
+    /*
+     * Returns the start (minus one) of the maximal suffix and its period.
+     */
+    private static int[] maxSuffix(byte[] x, boolean reversed) {
+        int ip = -1, jp = 0, k = 1, p = 1;
+        while (jp + k < x.length) {
+            int a = x[ip+k] & 0xFF;
+            int b = x[jp+k] & 0xFF;
+            if (a == b) {
+                if (k == p) {
+                    jp += p;
+                    k = 1;
+                } else {
+                    k++;
+                }
+            } else if (reversed ? a < b : a > b) {
+                jp += k;
+                k = 1;
+                p = jp - ip;
+            } else {
+                ip = jp++;
+                k = p = 1;
+            }
+        }
+        return new int[] {ip, p};
+    }
+
+    private static boolean isPeriodic(byte[] x, int p, int ms) {
+        for (int i = 0; i <= ms; i++) {
+            if (x[i] != x[i+p]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int match(byte[] mybuf, int off, int len) {
+        int l = bndbytes.length;
+        int mem = 0;
+        int k;
+
+        while (off <= len - l) {
+            // Compare right half
+            k = Math.max(ms + 1, mem);
+            while (k < l && bndbytes[k] == mybuf[off+k]) {
+                k++;
+            }
+            if (k < l) {
+                off += k - ms;
+                mem = 0;
+                continue;
+            }
+            // Compare left half
+            k = ms + 1;
+            while (k > mem && bndbytes[k-1] == mybuf[off+k-1]) {
+                k--;
+            }
+            if (k <= mem) {
+                return off;
+            }
+            off += period;
+            mem = mem0;
+        }
+        return -1;
+    }
+
+    @Override
+    public int match(ByteBuffer mybuf, int off, int len) {
+        int l = bndbytes.length;
+        int mem = 0;
+        int k;
+
+        while (off <= len - l) {
+            k = Math.max(ms + 1, mem);
+            while (k < l && bndbytes[k] == mybuf.get(off+k)) {
+                k++;
+            }
+            if (k < l) {
+                off += k - ms;
+                mem = 0;
+                continue;
+            }
+            k = ms + 1;
+            while (k > mem && bndbytes[k-1] == mybuf.get(off+k-1)) {
+                k--;
+            }
+            if (k <= mem) {
+                return off;
+            }
+            off += period;
+            mem = mem0;
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Entry point to the SIMD boundary matcher. The matcher is compiled for
+ * JDK 21 into {@code META-INF/versions/21} of the multi-release jar, so it
+ * is looked up by name. It is used only if the {@code jdk.incubator.vector}
+ * module is resolved at runtime (for e.g. with {@code --add-modules
+ * jdk.incubator.vector}), otherwise the scalar matchers are used.
+ */
+final class VectorSupport {
+
+    private static final Logger LOGGER = Logger.getLogger(VectorSupport.class.getName());
+
+    private static final MethodHandle CONSTRUCTOR = findConstructor();
+    private static volatile boolean available = CONSTRUCTOR != null;
+
+    private VectorSupport() {
+    }
+
+    /**
+     * Creates a SIMD matcher for the given boundary.
+     *
+     * @param boundary boundary bytes including the leading "--"
+     * @return matcher or null if the Vector API is not available
+     */
+    static BoundaryMatcher newMatcher(byte[] boundary) {
+        if (!available) {
+            return null;
+        }
+        try {
+            return (BoundaryMatcher) CONSTRUCTOR.invokeExact(boundary);
+        } catch (LinkageError e) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Vector API is not available, using scalar boundary search", e);
+            }
+            available = false;
+            return null;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findConstructor() {
+        Optional<Module> vector = ModuleLayer.boot().findModule("jdk.incubator.vector");
+        if (!vector.isPresent()) {
+            return null;
+        }
+        try {
+            // the module descriptor is the same for all the releases
+            VectorSupport.class.getModule().addReads(vector.get());
+            Class<?> matcher = Class.forName("org.jvnet.mimepull.VectorMatcher");
+            return MethodHandles.lookup()
+                    .findConstructor(matcher, MethodType.methodType(void.class, byte[].class))
+                    .asType(MethodType.methodType(BoundaryMatcher.class, byte[].class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // older JDK, the matcher is not in the jar
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Vector API is not available, using scalar boundary search", e);
+            }
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Part's partial content data that is a slice of an in-memory message
+ * or of a mapped file. Nothing is copied and nothing is spilled to a file,
+ * the message is owned by the application. A slice without an array (for
+ * e.g. a mapped file) is copied only when it is read.
+ */
+final class ViewData implements Data {
+    private final ByteBuffer data;
+
+    ViewData(ByteBuffer buf) {
+        data = buf.slice();
+    }
+
+    @Override
+    public int size() {
+        return data.remaining();
+    }
+
+    @Override
+    public byte[] read() {
+        if (data.hasArray()) {
+            return data.array();
+        }
+        byte[] buf = new byte[data.remaining()];
+        data.duplicate().get(buf);
+        return buf;
+    }
+
+    @Override
+    public void read(int position, byte[] dst, int off, int len) {
+        data.duplicate().position(position).get(dst, off, len);
+    }
+
+    @Override
+    public boolean hasArray() {
+        return data.hasArray();
+    }
+
+    @Override
+    public int offset() {
+        return data.hasArray() ? data.arrayOffset() : 0;
+    }
+
+    @Override
+    public ByteBuffer buffer() {
+        return data.duplicate();
+    }
+
+    /*
+     * The message is owned by the application
+     */
+    @Override
+    public void close() {
+    }
+
+    /*
+     * Always create ViewData
+     */
+    @Override
+    public Data createNext(DataHead dataHead, ByteBuffer buf) {
+        return new ViewData(buf);
+    }
+}
@@ -10,99 +10,186 @@
 
 package org.jvnet.mimepull;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.concurrent.TimeUnit;
+import java.nio.file.StandardOpenOption;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.lang.ref.ReferenceQueue;
-import java.lang.ref.WeakReference;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ScheduledExecutorService;
+import java.lang.ref.Cleaner;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Removing files based on this
- * <a href="https://www.oracle.com/technical-resources/articles/javase/finalization.html">article</a>
+ * Storage of a {@link DataFile}. It is released when the part is closed,
+ * or by a {@link Cleaner} as soon as the DataFile is unreachable, so it
+ * must not reference the DataFile.
  *
  * @author Jitendra Kotamraju
  */
-final class WeakDataFile extends WeakReference<DataFile> {
+class WeakDataFile {
 
     private static final Logger LOGGER = Logger.getLogger(WeakDataFile.class.getName());
-    private static int TIMEOUT = 10; //milliseconds
-    //private static final int MAX_ITERATIONS = 2;
-    private static ReferenceQueue<DataFile> refQueue = new ReferenceQueue<>();
-    private static Queue<WeakDataFile> refList = new ConcurrentLinkedQueue<>();
     private File file;
-    private final RandomAccessFile raf;
-    private static boolean hasCleanUpExecutor = false;
-    static {
-        int delay = 10;
-        try {
-            delay = Integer.getInteger("org.jvnet.mimepull.delay", 10);
-        } catch (SecurityException se) {
-            if (LOGGER.isLoggable(Level.CONFIG)) {
-                LOGGER.log(Level.CONFIG, "Cannot read ''{0}'' property, using defaults.",
-                        new Object[] {"org.jvnet.mimepull.delay"});
-            }
-        }
-        CleanUpExecutorFactory executorFactory = CleanUpExecutorFactory.newInstance();
-        if (executorFactory!=null) {
-            if (LOGGER.isLoggable(Level.FINE)) {
-                LOGGER.log(Level.FINE, "Initializing clean up executor for MIMEPULL: {0}", executorFactory.getClass().getName());
-            }
-            ScheduledExecutorService scheduler = executorFactory.getScheduledExecutorService();
-            scheduler.scheduleWithFixedDelay(new CleanupRunnable(), delay, delay, TimeUnit.SECONDS);
-            hasCleanUpExecutor = true;
-        }
-    }
+    // positional reads and writes don't share a file pointer, so they need no lock
+    private volatile FileChannel channel;
+    private volatile boolean closed;
+    private final AtomicLong writePointer = new AtomicLong();
+    private final Cleaner.Cleanable cleanable;
+    private volatile boolean unregistered;
 
     WeakDataFile(DataFile df, File file) {
-        super(df, refQueue);
-        refList.add(this);
+        this(df);
         this.file = file;
         try {
-            raf = new RandomAccessFile(file, "rw");
+            channel = open(file);
         } catch(IOException ioe) {
+            unregister();
             throw new MIMEParsingException(ioe);
         }
-        if (!hasCleanUpExecutor) {
-            drainRefQueueBounded();
+    }
+
+    /*
+     * For the storage that is not a file of its own
+     */
+    WeakDataFile(DataFile df) {
+        cleanable = ResourceCleaner.register(df, this::cleanUp);
+    }
+
+    /**
+     * Reserves a region for the next write.
+     *
+     * @param length no of bytes to write
+     * @return file pointer of the region
+     */
+    long reserve(int length) {
+        return writePointer.getAndAdd(length);
+    }
+
+    void read(long pointer, byte[] buf, int offset, int length ) {
+        ByteBuffer dst = ByteBuffer.wrap(buf, offset, length);
+        try {
+            while (dst.hasRemaining()) {
+                if (channel.read(dst, pointer + dst.position() - offset) == -1) {
+                    throw new EOFException();
+                }
+            }
+        } catch(IOException ioe) {
+            reopen(ioe);
+            throw new MIMEParsingException(ioe);
         }
     }
 
-    synchronized void read(long pointer, byte[] buf, int offset, int length ) {
+    long writeTo(long pointer, byte[] data, int offset, int length) {
+        return writeTo(pointer, ByteBuffer.wrap(data, offset, length));
+    }
+
+    long writeTo(long pointer, ByteBuffer src) {
+        int start = src.position();
         try {
-            raf.seek(pointer);
-            raf.readFully(buf, offset, length);
+            while (src.hasRemaining()) {
+                channel.write(src, pointer + src.position() - start);
+            }
+            return pointer + src.position() - start;    // Update pointer for next write
         } catch(IOException ioe) {
+            reopen(ioe);
             throw new MIMEParsingException(ioe);
         }
     }
 
-    synchronized long writeTo(long pointer, byte[] data, int offset, int length) {
+    /*
+     * A gathering write needs the channel position, the lock keeps
+     * the other gathering writes off it. Positional I/O ignores it.
+     */
+    synchronized long writeTo(long pointer, ByteBuffer[] srcs) {
         try {
-            raf.seek(pointer);
-            raf.write(data, offset, length);
-            return raf.getFilePointer();    // Update pointer for next write
+            channel.position(pointer);
+            long length = remaining(srcs);
+            long n = 0;
+            while (n < length) {
+                n += channel.write(srcs);
+            }
+            return pointer + n;
         } catch(IOException ioe) {
+            reopen(ioe);
             throw new MIMEParsingException(ioe);
         }
     }
 
+    /*
+     * Total no of bytes to write, some of the buffers may be empty
+     */
+    static long remaining(ByteBuffer[] srcs) {
+        long length = 0;
+        for (ByteBuffer src : srcs) {
+            length += src.remaining();
+        }
+        return length;
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /*
+     * An interrupted read or write closes the channel for every thread,
+     * so the file is opened again for the others
+     */
+    private synchronized void reopen(IOException ioe) {
+        if (ioe instanceof ClosedByInterruptException && !closed && !channel.isOpen()) {
+            try {
+                channel = open(file);
+            } catch(IOException e) {
+                ioe.addSuppressed(e);
+            }
+        }
+    }
+
+    private synchronized void closeChannel() throws IOException {
+        closed = true;
+        channel.close();
+    }
+
+    /*
+     * The storage is released, or moved, it won't be cleaned up
+     */
+    final void unregister() {
+        unregistered = true;
+        cleanable.clean();
+    }
+
+    /*
+     * Runs on the cleaner thread when the part is not closed
+     */
+    private void cleanUp() {
+        if (!unregistered) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Cleaning unreachable file = {0}", this);
+            }
+            try {
+                close();
+            } catch (RuntimeException e) {
+                if (LOGGER.isLoggable(Level.INFO)) {
+                    LOGGER.log(Level.INFO, "File " + this + " was not cleaned", e);
+                }
+            }
+        }
+    }
+
     void close() {
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.log(Level.FINE, "Deleting file = {0}", file.getName());
         }
-        refList.remove(this);
+        unregister();
         try {
-            raf.close();
+            closeChannel();
             boolean deleted = file.delete();
             if (!deleted) {
                 if (LOGGER.isLoggable(Level.INFO)) {
@@ -114,13 +201,23 @@ final class WeakDataFile extends WeakReference<DataFile> {
         }
     }
 
+    /**
+     * Checks if the content is in a file of its own, which
+     * {@link #renameTo(File)} can move.
+     *
+     * @return false if the content is elsewhere
+     */
+    boolean canRename() {
+        return true;
+    }
+
     void renameTo(File f) {
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.log(Level.FINE, "Moving file={0} to={1}", new Object[]{file, f});
         }
-        refList.remove(this);
+        unregister();
         try {
-            raf.close();
+            closeChannel();
             Path target = Files.move(file.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
             boolean renamed = f.toPath().equals(target);
             if (!renamed) {
@@ -136,34 +233,8 @@ final class WeakDataFile extends WeakReference<DataFile> {
 
     }
 
-    static void drainRefQueueBounded() {
-        WeakDataFile weak;
-        while (( weak = (WeakDataFile) refQueue.poll()) != null ) {
-            if (LOGGER.isLoggable(Level.FINE)) {
-                LOGGER.log(Level.FINE, "Cleaning file = {0} from reference queue.", weak.file);
-            }
-            weak.close();
-        }
-    }
-
-    private static class CleanupRunnable implements Runnable {
-
-        @Override
-        public void run() {
-            try {
-                if (LOGGER.isLoggable(Level.FINE)) {
-                    LOGGER.log(Level.FINE, "Running cleanup task");
-                }
-                WeakDataFile weak = (WeakDataFile) refQueue.remove(TIMEOUT);
-                while (weak != null) {
-                    if (LOGGER.isLoggable(Level.FINE)) {
-                        LOGGER.log(Level.FINE, "Cleaning file = {0} from reference queue.", weak.file);
-                    }
-                    weak.close();
-                    weak = (WeakDataFile) refQueue.remove(TIMEOUT);
-                }
-            } catch (InterruptedException e) {
-            }
-        }
+    @Override
+    public String toString() {
+        return String.valueOf(file);
     }
 }
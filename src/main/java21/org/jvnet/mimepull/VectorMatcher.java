@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.nio.ByteBuffer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD boundary search with the Vector API. A whole vector of candidate
+ * positions is tested at once by comparing the first and the last boundary
+ * byte; the full boundary is compared only at the positions where both
+ * match. Buffers without an array are scanned a word at a time, vectors
+ * are loaded from them only through memory segments, a preview API on JDK 21.
+ */
+final class VectorMatcher implements BoundaryMatcher {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private final byte[] bndbytes;
+    private final byte firstByte;
+    private final byte lastByte;
+    private final SwarMatcher swar;
+
+    VectorMatcher(byte[] bndbytes) {
+        this.bndbytes = bndbytes;
+        this.firstByte = bndbytes[0];
+        this.lastByte = bndbytes[bndbytes.length - 1];
+        this.swar = new SwarMatcher(bndbytes);
+    }
+
+    @Override
+    public int match(byte[] mybuf, int off, int len) {
+        int last = bndbytes.length - 1;
+        int end = len - bndbytes.length;      // last possible match position
+        int lanes = SPECIES.length();
+
+        for (; off <= end - lanes + 1; off += lanes) {
+            ByteVector first = ByteVector.fromArray(SPECIES, mybuf, off);
+            ByteVector lastv = ByteVector.fromArray(SPECIES, mybuf, off + last);
+            long found = first.eq(firstByte).and(lastv.eq(lastByte)).toLong();
+            while (found != 0) {
+                int start = off + Long.numberOfTrailingZeros(found);
+                if (matchesAt(mybuf, start)) {
+                    return start;
+                }
+                found &= found - 1;
+            }
+        }
+        for (; off <= end; off++) {
+            if (mybuf[off] == firstByte && mybuf[off+last] == lastByte && matchesAt(mybuf, off)) {
+                return off;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int match(ByteBuffer mybuf, int off, int len) {
+        return swar.match(mybuf, off, len);
+    }
+
+    private boolean matchesAt(byte[] mybuf, int start) {
+        for (int j = 1; j < bndbytes.length - 1; j++) {
+            if (mybuf[start+j] != bndbytes[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Checks that all the {@link BoundarySearch} algorithms agree. Run
+ * {@link #main} to compare their scan throughput.
+ */
+public class BoundaryMatcherTest {
+
+    private static final String[] BOUNDARIES = {
+        "--boundary",
+        "----=_Part_4_910054940.1065629194743",
+        "--aaaaaaaa",
+        "--abababab",
+        "--\u00ff\u00fe\u0080",
+        // critical factorization in the second half
+        "----a",
+        "--abcdz",
+        "--"
+    };
+
+    public BoundaryMatcherTest() {}
+
+    @Test
+    public void testRandomContent() {
+        Random random = new Random(42);
+        for (String boundary : BOUNDARIES) {
+            byte[] bnd = boundary.getBytes(StandardCharsets.ISO_8859_1);
+            for (int round = 0; round < 200; round++) {
+                byte[] buf = new byte[random.nextInt(300)];
+                // small alphabet, so that partial matches are common
+                for (int i = 0; i < buf.length; i++) {
+                    buf[i] = bnd[random.nextInt(bnd.length)];
+                    if (random.nextInt(8) == 0) {
+                        buf[i] = (byte) random.nextInt(256);
+                    }
+                }
+                if (buf.length > bnd.length && random.nextBoolean()) {
+                    System.arraycopy(bnd, 0, buf, random.nextInt(buf.length - bnd.length), bnd.length);
+                }
+                int off = buf.length > 0 ? random.nextInt(buf.length) : 0;
+                verify(bnd, buf, off, buf.length);
+                verify(bnd, buf, 0, buf.length);
+                verify(bnd, buf, 0, off);
+            }
+        }
+    }
+
+    @Test
+    public void testVectorSelected() {
+        // set by the jdk21 profile, which runs the tests on the multi-release jar
+        Assume.assumeTrue(Boolean.getBoolean("mimepull.test.vector"));
+        BoundaryMatcher matcher = BoundarySearch.VECTOR.newMatcher("--boundary".getBytes(StandardCharsets.ISO_8859_1));
+        Assert.assertEquals("VectorMatcher", matcher.getClass().getSimpleName());
+    }
+
+    @Test
+    public void testParsing() throws Exception {
+        for (BoundarySearch search : BoundarySearch.values()) {
+            InputStream in = getClass().getResourceAsStream("/msg.txt");
+            String boundary = "----=_Part_4_910054940.1065629194743";
+            MIMEConfig config = new MIMEConfig();
+            config.setBoundarySearch(search);
+            MIMEMessage mm = new MIMEMessage(in, boundary, config);
+            mm.parseAll();
+            List<MIMEPart> parts = mm.getAttachments();
+            Assert.assertEquals(search.name(), 2, parts.size());
+            Assert.assertEquals(search.name(), "1351327060508.1065629194423.IBM.WEBSERVICES@ibm-7pr28r4m35k", parts.get(1).getContentId());
+            InputStream part1 = parts.get(1).read();
+            Assert.assertEquals((byte)part1.read(), (byte)0xff);
+            Assert.assertEquals((byte)part1.read(), (byte)0xd8);
+            part1.close();
+            mm.close();
+        }
+    }
+
+    private static void verify(byte[] bnd, byte[] buf, int off, int len) {
+        int expected = naive(bnd, buf, off, len);
+        ByteBuffer direct = ByteBuffer.allocateDirect(buf.length);
+        direct.put(buf).flip();
+        for (BoundarySearch search : BoundarySearch.values()) {
+            BoundaryMatcher matcher = search.newMatcher(bnd);
+            String name = search.name() + " for " + new String(bnd, StandardCharsets.ISO_8859_1);
+            Assert.assertEquals(name, expected, matcher.match(buf, off, len));
+            Assert.assertEquals(name, expected, matcher.match(direct, off, len));
+        }
+    }
+
+    private static int naive(byte[] bnd, byte[] buf, int off, int len) {
+NEXT:   for (int i = off; i <= len - bnd.length; i++) {
+            for (int j = 0; j < bnd.length; j++) {
+                if (buf[i+j] != bnd[j]) {
+                    continue NEXT;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Prints the scan throughput of every algorithm on random binary,
+     * base64 and text content that does not contain the boundary.
+     *
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        byte[] bnd = "----=_Part_4_910054940.1065629194743".getBytes(StandardCharsets.ISO_8859_1);
+        Random random = new Random(1);
+
+        byte[] binary = new byte[8 << 20];
+        random.nextBytes(binary);
+        byte[] base64 = Base64.getMimeEncoder().encode(binary);
+        StringBuilder sb = new StringBuilder();
+        String[] words = {"<soapenv:Envelope>", "the", "quick", "brown", "fox", "--", "=", "Part", "\r\n"};
+        while (sb.length() < binary.length) {
+            sb.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        byte[] text = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+
+        for (BoundarySearch search : BoundarySearch.values()) {
+            BoundaryMatcher matcher = search.newMatcher(bnd);
+            System.out.printf("%-12s binary %8.1f MB/s  base64 %8.1f MB/s  text %8.1f MB/s%n", search,
+                    throughput(matcher, binary), throughput(matcher, base64), throughput(matcher, text));
+        }
+    }
+
+    private static double throughput(BoundaryMatcher matcher, byte[] buf) {
+        int chunk = 8192 + 1006 + 72;
+        long bytes = 0;
+        long start = 0;
+        for (int iter = 0; iter < 30; iter++) {
+            if (iter == 10) {       // warm up
+                bytes = 0;
+                start = System.nanoTime();
+            }
+            for (int off = 0; off + chunk <= buf.length; off += chunk) {
+                if (matcher.match(buf, off, off + chunk) != -1) {
+                    throw new IllegalStateException();
+                }
+                bytes += chunk;
+            }
+        }
+        return bytes / ((System.nanoTime() - start) / 1e9) / (1 << 20);
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContentTypeTest {
+
+    public ContentTypeTest() {}
+
+    @Test
+    public void testParse() {
+        ContentType ct = ContentType.parse("Multipart/Related; type=\"application/xop+xml\";"
+                + " BOUNDARY=uuid:0ca0e16e; start=\"<root.message@cxf.apache.org>\"; start-info=\"text/\\\"xml\\\"\"; bad; x=");
+        Assert.assertEquals("multipart", ct.getPrimaryType());
+        Assert.assertEquals("related", ct.getSubType());
+        Assert.assertEquals("multipart/related", ct.getBaseType());
+        Assert.assertTrue(ct.match("multipart/RELATED"));
+        Assert.assertFalse(ct.match("multipart/relate"));
+        Assert.assertFalse(ct.match("text/related"));
+        Assert.assertEquals("application/xop+xml", ct.getParameter("type"));
+        Assert.assertEquals("uuid:0ca0e16e", ct.getParameter("boundary"));
+        Assert.assertEquals("<root.message@cxf.apache.org>", ct.getParameter("Start"));
+        Assert.assertEquals("text/\"xml\"", ct.getParameter("start-info"));
+        Assert.assertEquals("", ct.getParameter("x"));
+        Assert.assertNull(ct.getParameter("bad"));
+        Assert.assertEquals(5, ct.getParameters().size());
+
+        ct = ContentType.parse("text/plain");
+        Assert.assertTrue(ct.getParameters().isEmpty());
+        Assert.assertEquals("text/plain", ct.toString());
+
+        try {
+            ContentType.parse("text; charset=utf-8/x");
+            Assert.fail("Content-Type without subtype should be rejected");
+        } catch (MIMEParsingException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMessage() {
+        ContentType ct = ContentType.parse("multipart/related; boundary=\"----=_Part_4_910054940.1065629194743\"");
+        MIMEMessage mm = new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), ct);
+        List<MIMEPart> parts = mm.getAttachments();
+        Assert.assertEquals(2, parts.size());
+        Assert.assertEquals("text/xml", parts.get(0).getParsedContentType().getBaseType());
+        Assert.assertSame(parts.get(0).getParsedContentType(), parts.get(0).getParsedContentType());
+
+        try {
+            new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), ContentType.parse("multipart/related"));
+            Assert.fail("Content-Type without boundary should be rejected");
+        } catch (MIMEParsingException expected) {
+            // expected
+        }
+    }
+
+}
@@ -10,8 +10,27 @@
 
 package org.jvnet.mimepull;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -46,6 +65,488 @@ public class FileTest {
         }
     }
 
+    @Test
+    public void testConcurrentReads() throws Exception {
+        final MIMEConfig config = new MIMEConfig();
+        config.setMemoryThreshold(4096);
+        try (final MIMEMessage message = new MIMEMessage(getInputStream(PART_SIZE), BOUNDARY, config)) {
+            final MIMEPart part = message.getAttachments().get(1);
+
+            // Readers of the spilled part run in parallel
+            final Thread[] readers = new Thread[4];
+            final Throwable[] errors = new Throwable[readers.length];
+            for (int t = 0; t < readers.length; t++) {
+                final int index = t;
+                readers[t] = new Thread(() -> {
+                    try (InputStream in = part.read()) {
+                        assertContent(1, PART_SIZE, in);
+                    } catch (Throwable e) {
+                        errors[index] = e;
+                    }
+                });
+                readers[t].start();
+            }
+            for (int t = 0; t < readers.length; t++) {
+                readers[t].join();
+                Assert.assertNull(String.valueOf(errors[t]), errors[t]);
+            }
+        }
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        final File dir = Files.createTempDirectory("budget").toFile();
+        dir.deleteOnExit();
+        final MemoryBudget budget = new MemoryBudget(PART_SIZE + 8192);
+        final MIMEConfig config = new MIMEConfig();
+        config.setDir(dir.getPath());
+        config.setMemoryBudget(budget);
+        final MIMEMessage first = new MIMEMessage(getInputStream(PART_SIZE), BOUNDARY, config);
+        final MIMEMessage second = new MIMEMessage(getInputStream(PART_SIZE), BOUNDARY, config);
+        first.parseAll();
+        second.parseAll();
+        // far below the memory threshold, the budget spills parts
+        Assert.assertTrue(dir.list().length > 0);
+        Assert.assertTrue(budget.getUsed() > 0);
+        Assert.assertTrue(budget.getUsed() <= budget.getCapacity());
+
+        // spilled or not, the content is the same
+        assertParts(first, PART_SIZE);
+        assertParts(second, PART_SIZE);
+        first.close();
+        second.close();
+        Assert.assertEquals(0, budget.getUsed());
+        Assert.assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void testOffHeap() throws Exception {
+        for (long threshold : new long[] {-1L, 4096L}) {
+            final MIMEConfig config = new MIMEConfig();
+            config.setDirectBufferPoolSize(8);
+            config.setMemoryThreshold(threshold);
+            final DirectBufferPool pool = config.getDirectBufferPool();
+            try (final MIMEMessage message = new MIMEMessage(getInputStream(PART_SIZE), BOUNDARY, config)) {
+                message.parseAll();
+                if (threshold == -1L) {
+                    // all the chunks are in direct buffers taken from the pool
+                    Assert.assertEquals(0, pool.available());
+                } else {
+                    // the buffers of the spilled chunks are back in the pool, before close
+                    Assert.assertTrue(pool.available() > 0);
+                }
+                final List<MIMEPart> parts = message.getAttachments();
+                for (int i = 0; i < 2; i++) {
+                    try (InputStream in = parts.get(i).read()) {
+                        assertContent(i, PART_SIZE, in);
+                    }
+                }
+                // the last part is read once, its buffers go back to the pool as they are read
+                final int available = pool.available();
+                try (InputStream in = parts.get(2).readOnce()) {
+                    assertContent(2, PART_SIZE, in);
+                    if (threshold == -1L) {
+                        Assert.assertTrue(pool.available() > available);
+                    }
+                }
+            }
+            if (threshold == -1L) {
+                // more chunks than pooled buffers, the pool is full again
+                Assert.assertEquals(8, pool.available());
+            }
+        }
+    }
+
+    @Test
+    public void testReadOnceClose() throws Exception {
+        final int[] available = new int[2];
+        for (int round = 0; round < 2; round++) {
+            final MemoryBudget budget = new MemoryBudget(1 << 20);
+            final MIMEConfig config = new MIMEConfig();
+            config.setDirectBufferPoolSize(64);
+            config.setMemoryBudget(budget);
+            try (final MIMEMessage message = new MIMEMessage(getInputStream(PART_SIZE), BOUNDARY, config)) {
+                message.parseAll();
+                if (round == 1) {
+                    // the stream is left open, most of the part is not read
+                    final InputStream in = message.getPart(0).readOnce();
+                    Assert.assertEquals('A', in.read());
+                }
+            }
+            // closing the message releases the chunks that are not read
+            Assert.assertEquals(0, budget.getUsed());
+            available[round] = config.getDirectBufferPool().available();
+        }
+        Assert.assertEquals(available[0], available[1]);
+    }
+
+    @Test
+    public void testSpillStore() throws Exception {
+        final File dir = Files.createTempDirectory("spill").toFile();
+        final MIMEConfig config = new MIMEConfig();
+        config.setMemoryThreshold(4096);
+        config.setDir(dir.getPath());
+        config.setSpillSegmentSize(1 << 20);
+        String segment = null;
+        for (int round = 0; round < 2; round++) {
+            try (final MIMEMessage message = new MIMEMessage(getInputStream(PART_SIZE), BOUNDARY, config)) {
+                assertParts(message, PART_SIZE);
+                // all the parts are in one shared file, it is reused by the next message
+                Assert.assertEquals(1, dir.list().length);
+                if (segment == null) {
+                    segment = dir.list()[0];
+                }
+                Assert.assertEquals(segment, dir.list()[0]);
+                // the segment is written out in full when it is created
+                Assert.assertEquals(1 << 20, dir.listFiles()[0].length());
+
+                // the content is copied out of the shared file
+                assertMoveTo(message.getPart(0), PART_SIZE);
+                Assert.assertEquals(1, dir.list().length);
+            }
+        }
+        // the replaced store deletes the empty segment it kept
+        config.setSpillSegmentSize(0);
+        Assert.assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void testSpillStoreExtents() throws Exception {
+        final File dir = Files.createTempDirectory("extents").toFile();
+        dir.deleteOnExit();
+        final SpillStore store = new SpillStore(dir, "MIME", null, 1 << 16, 1);
+        final Random random = new Random(7);
+        final Map<Long, Integer> extents = new HashMap<>();     // address -> size
+        for (int round = 0; round < 2000; round++) {
+            if (!extents.isEmpty() && random.nextInt(3) == 0) {
+                final Long address = extents.keySet().iterator().next();
+                store.free(address, extents.remove(address));
+            } else {
+                final int size = 1 + random.nextInt(4096);
+                final long address = store.allocate(size);
+                for (Map.Entry<Long, Integer> e : extents.entrySet()) {
+                    Assert.assertTrue("extents overlap",
+                            address + size <= e.getKey() || e.getKey() + e.getValue() <= address);
+                }
+                extents.put(address, size);
+            }
+        }
+        // each extent keeps its own content
+        for (Map.Entry<Long, Integer> e : extents.entrySet()) {
+            final byte[] data = new byte[e.getValue()];
+            Arrays.fill(data, (byte) e.getKey().hashCode());
+            store.write(e.getKey(), ByteBuffer.wrap(data));
+        }
+        for (Map.Entry<Long, Integer> e : extents.entrySet()) {
+            final ByteBuffer data = ByteBuffer.allocate(e.getValue());
+            store.read(e.getKey(), data);
+            for (int i = 0; i < data.capacity(); i++) {
+                Assert.assertEquals((byte) e.getKey().hashCode(), data.get(i));
+            }
+        }
+        // the segments are deleted as they get empty
+        store.close();
+        Assert.assertTrue(dir.list().length > 0);
+        for (Map.Entry<Long, Integer> e : extents.entrySet()) {
+            store.free(e.getKey(), e.getValue());
+        }
+        Assert.assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void testSpillEmptyLastChunk() throws Exception {
+        // the parser ends this body with an empty chunk
+        final byte[] body = new byte[17387];
+        Arrays.fill(body, (byte) 'x');
+        final String msg = "--boundary\r\n\r\n" + new String(body, "ISO-8859-1") + "\r\n--boundary--\r\n";
+        for (long segmentSize : new long[] {0, 1 << 20}) {
+            final MemoryBudget budget = new MemoryBudget(20000, MemoryBudget.SpillPolicy.OLDEST_FIRST);
+            final MIMEConfig config = new MIMEConfig();
+            config.setMemoryThreshold(-1);
+            config.setMemoryBudget(budget);
+            config.setSpillSegmentSize(segmentSize);
+            final MIMEConfig spillable = new MIMEConfig();
+            spillable.setMemoryBudget(budget);
+            spillable.setSpillSegmentSize(segmentSize);
+            try (final MIMEMessage first = new MIMEMessage(new ByteArrayInputStream(msg.getBytes("ISO-8859-1")), BOUNDARY, spillable);
+                 final MIMEMessage second = new MIMEMessage(new ByteArrayInputStream(msg.getBytes("ISO-8859-1")), BOUNDARY, config)) {
+                first.parseAll();
+                // over the budget, the first part is spilled with all its chunks
+                second.parseAll();
+                try (InputStream in = first.getPart(0).read()) {
+                    Assert.assertArrayEquals(body, readAll(in));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWriteBehind() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final File dir = Files.createTempDirectory("spill").toFile();
+            final AtomicInteger writes = new AtomicInteger();
+            final MIMEConfig config = new MIMEConfig();
+            config.setMemoryThreshold(4096);
+            config.setDir(dir.getPath());
+            config.setSpillExecutor(task -> {
+                writes.incrementAndGet();
+                executor.execute(task);
+            }, 2);
+            try (final MIMEMessage message = new MIMEMessage(getInputStream(PART_SIZE), BOUNDARY, config)) {
+                assertParts(message, PART_SIZE);
+                // the spilled chunks are written by the executor
+                Assert.assertTrue(writes.get() > 0);
+                assertMoveTo(message.getPart(0), PART_SIZE);
+            }
+            // the files are deleted once their writes are done
+            executor.submit(() -> { }).get();
+            Assert.assertEquals(0, dir.list().length);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSpillShortChunks() throws Exception {
+        // a boundary-like line in the content ends a chunk early
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; body.length() < PART_SIZE; i++) {
+            body.append("line ").append(i).append("\r\n--boundaryX\r\n");
+        }
+        final String msg = "--boundary\r\n\r\n" + body + "\r\n--boundary--\r\n";
+        for (long segmentSize : new long[] {0, 1 << 20}) {
+            final MIMEConfig config = new MIMEConfig();
+            config.setMemoryThreshold(4096);
+            config.setSpillSegmentSize(segmentSize);
+            try (final MIMEMessage message = new MIMEMessage(new ByteArrayInputStream(msg.getBytes("ISO-8859-1")), BOUNDARY, config);
+                 InputStream in = message.getPart(0).read()) {
+                Assert.assertEquals(body.toString(), new String(readAll(in), "ISO-8859-1"));
+            }
+        }
+    }
+
+    @Test
+    public void testSpilledReads() throws Exception {
+        final MIMEConfig config = new MIMEConfig();
+        config.setMemoryThreshold(4096);
+        try (final MIMEMessage message = new MIMEMessage(getInputStream(PART_SIZE), BOUNDARY, config)) {
+            final MIMEPart part = message.getPart("partB");
+            // single bytes, small and large reads across the chunks
+            try (InputStream in = part.read()) {
+                final byte[] buf = new byte[PART_SIZE];
+                int pos = 0;
+                int step = 1;
+                while (pos < PART_SIZE) {
+                    if (step % 3 == 0) {
+                        final int b = in.read();
+                        Assert.assertNotEquals(-1, b);
+                        buf[pos++] = (byte) b;
+                    } else {
+                        final int len = in.read(buf, pos, Math.min(step * 997, PART_SIZE - pos));
+                        Assert.assertTrue(len > 0);
+                        pos += len;
+                    }
+                    step++;
+                }
+                Assert.assertEquals(-1, in.read());
+                for (int i = 0; i < PART_SIZE; i++) {
+                    Assert.assertEquals((byte) ('A' + (1 + i) % 26), buf[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCompressedTier() throws Exception {
+        // compressed in memory, then spilled with the compressed chunks
+        final File dir = Files.createTempDirectory("compressed").toFile();
+        dir.deleteOnExit();
+        for (boolean spill : new boolean[] {false, true}) {
+            // the parts are over the budget once they are compressed
+            final MemoryBudget budget = new MemoryBudget(spill ? 8000 : Long.MAX_VALUE);
+            final MIMEConfig config = new MIMEConfig();
+            config.setCompressionThreshold(8192);
+            config.setDir(dir.getPath());
+            config.setMemoryBudget(budget);
+            try (final MIMEMessage message = new MIMEMessage(getInputStream(8 * PART_SIZE), BOUNDARY, config)) {
+                message.parseAll();
+                // the chunks are a fraction of the content, in memory and in the files
+                Assert.assertTrue(budget.getUsed() < PART_SIZE);
+                if (spill) {
+                    Assert.assertTrue(dir.list().length > 0);
+                    for (File f : dir.listFiles()) {
+                        Assert.assertTrue(f.length() < PART_SIZE);
+                    }
+                }
+                assertParts(message, 8 * PART_SIZE);
+                assertMoveTo(message.getPart(0), 8 * PART_SIZE);
+            }
+            Assert.assertEquals(0, budget.getUsed());
+        }
+
+        // one inflater for all the chunks of a stream
+        final Deflater deflater = new Deflater();
+        final byte[] scratch = new byte[PART_SIZE];
+        final ChunkWindow window = new ChunkWindow();
+        for (int i = 0; i < 3; i++) {
+            final byte[] chunk = new byte[PART_SIZE];
+            Arrays.fill(chunk, (byte) ('a' + i));
+            window.load(CompressedData.compress(ByteBuffer.wrap(chunk), deflater, scratch, new MIMEConfig()));
+            final byte[] content = new byte[PART_SIZE];
+            Assert.assertEquals(PART_SIZE, window.read(content, 0, PART_SIZE));
+            Assert.assertFalse(window.hasRemaining());
+            Assert.assertArrayEquals(chunk, content);
+        }
+        window.close();
+        deflater.end();
+
+        // chunks bigger than the stream's scratch array are inflated once
+        final byte[] body = new byte[17387];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) ('a' + i % 7);
+        }
+        final String msg = "--boundary\r\n\r\n" + new String(body, "ISO-8859-1") + "\r\n--boundary--\r\n";
+        final MIMEConfig config = new MIMEConfig();
+        config.setCompressionThreshold(0);
+        try (final MIMEMessage message = new MIMEMessage(new ByteArrayInputStream(msg.getBytes("ISO-8859-1")), BOUNDARY, config);
+             InputStream in = message.getPart(0).read()) {
+            final byte[] content = new byte[body.length];
+            int pos = 0;
+            for (int len = 0; len != -1 && pos < content.length; pos += len) {
+                content[pos] = (byte) in.read();
+                len = 1 + in.read(content, pos + 1, Math.min(5000, content.length - pos - 1));
+            }
+            Assert.assertEquals(-1, in.read());
+            Assert.assertArrayEquals(body, content);
+        }
+    }
+
+    @Test
+    public void testMissingAttachmentStore() {
+        final String name = AttachmentStore.class.getName();
+        System.setProperty(name, "org.jvnet.mimepull.NoSuchStore");
+        try {
+            // logged, the parts go to temp files
+            Assert.assertNull(AttachmentStore.newInstance());
+        } finally {
+            System.clearProperty(name);
+        }
+    }
+
+    @Test
+    public void testAttachmentStore() throws Exception {
+        final File dir = Files.createTempDirectory("store").toFile();
+        dir.deleteOnExit();
+        for (boolean files : new boolean[] {false, true}) {
+            final AttachmentStore store = files ? AttachmentStore.newFileStore(dir) : AttachmentStore.newMemoryStore();
+            final MIMEConfig config = new MIMEConfig();
+            config.setMemoryThreshold(4096);
+            // the temp files can't be created, the parts go to the store
+            config.setDir(new File(dir, "missing").getPath());
+            config.setAttachmentStore(store);
+            try (final MIMEMessage message = new MIMEMessage(getInputStream(PART_SIZE), BOUNDARY, config)) {
+                assertParts(message, PART_SIZE);
+                // a file of the store for each part
+                Assert.assertEquals(files ? 3 : 0, dir.list().length);
+                // the storage of the store is not renamed, the content is copied
+                assertMoveTo(message.getPart(1), PART_SIZE);
+                Assert.assertEquals(files ? 3 : 0, dir.list().length);
+            }
+            Assert.assertEquals(0, dir.list().length);
+        }
+    }
+
+    @Test
+    public void testUnclosedMessage() throws Exception {
+        final File dir = Files.createTempDirectory("unclosed").toFile();
+        dir.deleteOnExit();
+        final Logger logger = Logger.getLogger(ResourceCleaner.class.getName());
+        final List<LogRecord> leaks = new CopyOnWriteArrayList<>();
+        final Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                leaks.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        final Level level = logger.getLevel();
+        logger.setLevel(Level.WARNING);
+        // keep the warning out of the build log
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+        ResourceCleaner.setLeakDetection(true);
+        try {
+            parseUnclosed(dir);
+            Assert.assertEquals(3, dir.list().length);
+            // the files go away with the message, without a cleanup executor
+            for (int i = 0; i < 100 && (dir.list().length > 0 || leaks.isEmpty()); i++) {
+                System.gc();
+                Thread.sleep(50);
+            }
+            Assert.assertEquals(0, dir.list().length);
+            Assert.assertEquals(1, leaks.size());
+            Assert.assertTrue(leaks.get(0).getThrown().getMessage().contains("MIMEMessage"));
+        } finally {
+            ResourceCleaner.setLeakDetection(false);
+            logger.removeHandler(handler);
+            logger.setUseParentHandlers(true);
+            logger.setLevel(level);
+        }
+    }
+
+    private void parseUnclosed(final File dir) {
+        final MIMEConfig config = new MIMEConfig();
+        config.setMemoryThreshold(4096);
+        config.setDir(dir.getPath());
+        new MIMEMessage(getInputStream(PART_SIZE), BOUNDARY, config).parseAll();
+    }
+
+    /*
+     * Reads all the parts of the test message
+     */
+    private static void assertParts(MIMEMessage message, int size) throws IOException {
+        final List<MIMEPart> parts = message.getAttachments();
+        Assert.assertEquals(3, parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            try (InputStream in = parts.get(i).read()) {
+                assertContent(i, size, in);
+            }
+        }
+    }
+
+    private static void assertContent(int partNo, int size, InputStream in) throws IOException {
+        final byte[] content = readAll(in);
+        Assert.assertEquals(size, content.length);
+        for (int j = 0; j < size; j++) {
+            Assert.assertEquals((byte) ('A' + (partNo + j) % 26), content[j]);
+        }
+    }
+
+    private static void assertMoveTo(MIMEPart part, int size) throws IOException {
+        final File tempFile = File.createTempFile("ship", "it");
+        tempFile.deleteOnExit();
+        part.moveTo(tempFile);
+        Assert.assertEquals(size, tempFile.length());
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[1000];
+        int len;
+        while ((len = in.read(buf)) != -1) {
+            out.write(buf, 0, len);
+        }
+        return out.toByteArray();
+    }
+
     /**
      * partA's content ABC...ZAB...
      * partB's content BCD...ZAB...
@@ -14,9 +14,22 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * @author Jitendra Kotamraju
@@ -283,4 +296,333 @@ public class ParsingTest {
         }
     }
 
+    @Test
+    public void testChannel() throws Exception {
+        String boundary = "----=_Part_4_910054940.1065629194743";
+        ReadableByteChannel[] channels = {
+            Channels.newChannel(getClass().getResourceAsStream("/msg.txt")),
+            FileChannel.open(Paths.get(getClass().getResource("/msg.txt").toURI()), StandardOpenOption.READ)
+        };
+        for (ReadableByteChannel channel : channels) {
+            MIMEConfig config = new MIMEConfig();
+            config.setChunkSize(100);
+            MIMEMessage mm = new MIMEMessage(channel, boundary, config);
+            List<MIMEPart> parts = mm.getAttachments();
+            Assert.assertEquals(2, parts.size());
+            Assert.assertEquals("1351327060508.1065629194423.IBM.WEBSERVICES@ibm-7pr28r4m35k", parts.get(1).getContentId());
+            Assert.assertFalse("Channel should be closed at EOF", channel.isOpen());
+
+            MIMEMessage expected = new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), boundary);
+            List<MIMEPart> expectedParts = expected.getAttachments();
+            for (int i = 0; i < parts.size(); i++) {
+                Assert.assertArrayEquals(readAll(expectedParts.get(i).read()), readAll(parts.get(i).read()));
+            }
+        }
+    }
+
+    @Test
+    public void testChannelStorage() throws Exception {
+        String boundary = "----=_Part_4_910054940.1065629194743";
+        Path file = Paths.get(getClass().getResource("/msg.txt").toURI());
+        MIMEMessage expected = new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), boundary);
+        List<MIMEPart> expectedParts = expected.getAttachments();
+
+        // the chunks sliced from the direct buffer end up in every kind of storage
+        MIMEConfig heap = new MIMEConfig();
+        MIMEConfig spilled = new MIMEConfig();
+        spilled.setMemoryThreshold(500);
+        MIMEConfig offHeap = new MIMEConfig();
+        offHeap.setDirectBufferPoolSize(4);
+        for (MIMEConfig config : new MIMEConfig[] {heap, spilled, offHeap}) {
+            config.setChunkSize(100);
+            config.setBufferPoolSize(2);
+            for (int round = 0; round < 2; round++) {
+                MIMEMessage mm = new MIMEMessage(FileChannel.open(file, StandardOpenOption.READ), boundary, config);
+                List<MIMEPart> parts = mm.getAttachments();
+                Assert.assertEquals(2, parts.size());
+                // the direct buffer is back in the pool once the message is parsed
+                Assert.assertEquals(1, config.getChannelBufferPool().available());
+                for (int i = 0; i < parts.size(); i++) {
+                    Assert.assertArrayEquals(readAll(expectedParts.get(i).read()), readAll(parts.get(i).read()));
+                }
+                mm.close();
+            }
+        }
+        expected.close();
+    }
+
+    @Test
+    public void testNonBlockingChannel() throws Exception {
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        try {
+            new MIMEMessage(pipe.source(), "boundary");
+            Assert.fail("Non-blocking channel should be rejected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        } finally {
+            pipe.source().close();
+            pipe.sink().close();
+        }
+    }
+
+    @Test
+    public void testInMemory() throws Exception {
+        String[][] messages = {
+            {"/msg.txt", "----=_Part_4_910054940.1065629194743"},
+            {"/msg2.txt", "----=_Part_1_807283631.1066069460327"},
+            {"/message1.txt", "----=_Part_7_10584188.1123489648993"},
+            {"/boundary-in-body.txt", "boundary"},
+            {"/emptypart.txt", "----=_Part_7_10584188.1123489648993"}
+        };
+        for (String[] message : messages) {
+            byte[] msg = readAll(getClass().getResourceAsStream(message[0]));
+            // the message is in the middle of a bigger array
+            byte[] arr = new byte[msg.length + 20];
+            System.arraycopy(msg, 0, arr, 10, msg.length);
+            ByteBuffer direct = ByteBuffer.allocateDirect(msg.length);
+            direct.put(msg).flip();
+            MIMEConfig config = new MIMEConfig();
+            config.setChunkSize(100);
+            MIMEMessage[] views = {
+                new MIMEMessage(msg, message[1]),
+                new MIMEMessage(ByteBuffer.wrap(arr, 10, msg.length), message[1], config),
+                new MIMEMessage(direct, message[1]),
+                new MIMEMessage(ByteBuffer.wrap(msg).asReadOnlyBuffer(), message[1], config)
+            };
+
+            MIMEMessage expected = new MIMEMessage(getClass().getResourceAsStream(message[0]), message[1]);
+            List<MIMEPart> expectedParts = expected.getAttachments();
+            for (MIMEMessage mm : views) {
+                List<MIMEPart> parts = mm.getAttachments();
+                Assert.assertEquals(message[0], expectedParts.size(), parts.size());
+                for (int i = 0; i < parts.size(); i++) {
+                    Assert.assertEquals(expectedParts.get(i).getContentId(), parts.get(i).getContentId());
+                    Assert.assertArrayEquals(message[0], readAll(expectedParts.get(i).read()), readAll(parts.get(i).read()));
+                }
+                mm.close();
+            }
+        }
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        String boundary = "----=_Part_4_910054940.1065629194743";
+        MIMEConfig config = new MIMEConfig();
+        config.setChunkSize(100);
+        MIMEMessage mm = MIMEMessage.open(Paths.get(getClass().getResource("/msg.txt").toURI()), boundary, config);
+        List<MIMEPart> parts = mm.getAttachments();
+        Assert.assertEquals(2, parts.size());
+        Assert.assertEquals("1351327060508.1065629194423.IBM.WEBSERVICES@ibm-7pr28r4m35k", parts.get(1).getContentId());
+
+        MIMEMessage expected = new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), boundary);
+        List<MIMEPart> expectedParts = expected.getAttachments();
+        for (int i = 0; i < parts.size(); i++) {
+            Assert.assertArrayEquals(readAll(expectedParts.get(i).read()), readAll(parts.get(i).read()));
+        }
+        mm.close();
+    }
+
+    @Test
+    public void testPartFilter() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        char[] body = new char[100000];
+        Arrays.fill(body, 'x');
+        for (String cid : new String[] {"skip1", "keep", "skip2"}) {
+            sb.append("--boundary\r\nContent-ID: <").append(cid).append(">\r\n\r\n").append(body).append("\r\n");
+        }
+        sb.append("--boundary--\r\n");
+        byte[] msg = sb.toString().getBytes("ISO-8859-1");
+
+        Path dir = Files.createTempDirectory("mimepull");
+        try {
+            MIMEConfig config = new MIMEConfig();
+            config.setMemoryThreshold(1000);
+            config.setDir(dir.toString());
+            MIMEMessage mm = new MIMEMessage(new ByteArrayInputStream(msg), "boundary", config);
+            mm.setPartFilter(MIMEPartFilter.contentIds("keep"));
+            List<MIMEPart> parts = mm.getAttachments();
+            Assert.assertEquals(3, parts.size());
+            Assert.assertEquals("skip2", parts.get(2).getContentId());
+            Assert.assertEquals(body.length, readAll(parts.get(1).read()).length);
+            try {
+                parts.get(0).read();
+                Assert.fail("Content of a skipped part should not be readable");
+            } catch (IllegalStateException expected) {
+                // expected
+            }
+            try (Stream<Path> files = Files.list(dir)) {
+                Assert.assertEquals("Only the kept part is spilled", 1, files.count());
+            }
+            mm.close();
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                files.forEach(f -> f.toFile().delete());
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testLargePreamble() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 300000; i++) {
+            // junk with false boundary matches
+            sb.append((i % 3 == 0) ? "--boundary junk\r\n" : (i % 3 == 1) ? "x--boundaryx\n" : "--bound\r\n");
+        }
+        sb.append("--boundary\r\nContent-ID: <a>\r\n\r\nhello\r\n--boundary--\r\n");
+        byte[] msg = sb.toString().getBytes("ISO-8859-1");
+        for (int chunkSize : new int[] {1, 100, 8192}) {
+            MIMEConfig config = new MIMEConfig();
+            config.setChunkSize(chunkSize);
+            MIMEMessage mm = new MIMEMessage(new ByteArrayInputStream(msg), "boundary", config);
+            List<MIMEPart> parts = mm.getAttachments();
+            Assert.assertEquals(1, parts.size());
+            Assert.assertEquals("a", parts.get(0).getContentId());
+            Assert.assertArrayEquals("hello".getBytes("ISO-8859-1"), readAll(parts.get(0).read()));
+        }
+    }
+
+    @Test
+    public void testFoldedHeaders() throws Exception {
+        String msg = "--boundary\n"
+                + "Content-Type: text/plain;\n"
+                + "\tcharset=utf-8\r\n"
+                + "content-id : <a>\n"
+                + "Content-Description:\tsome\r\n"
+                + "  description\n"
+                + "\n"
+                + "body\n"
+                + "--boundary--\n";
+        MIMEMessage mm = new MIMEMessage(new ByteArrayInputStream(msg.getBytes("ISO-8859-1")), "boundary");
+        MIMEPart part = mm.getPart(0);
+        Assert.assertEquals("a", part.getContentId());
+        Assert.assertEquals("text/plain;\r\n\tcharset=utf-8", part.getContentType());
+        Assert.assertEquals("some\r\n  description", part.getHeader("CONTENT-DESCRIPTION").get(0));
+        Assert.assertEquals(3, part.getAllHeaders().size());
+        Assert.assertEquals("content-id", part.getAllHeaders().get(1).getName());
+        Assert.assertNull(part.getHeader("Content"));
+        Assert.assertArrayEquals("body".getBytes("ISO-8859-1"), readAll(part.read()));
+    }
+
+    @Test
+    public void testRepeatedHeaders() throws Exception {
+        String msg = "--boundary\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Length: 4\r\n"
+                + "content-type: text/xml\r\n"
+                + "\r\n"
+                + "body\r\n"
+                + "--boundary--\r\n";
+        MIMEMessage mm = new MIMEMessage(new ByteArrayInputStream(msg.getBytes("ISO-8859-1")), "boundary");
+        MIMEPart part = mm.getPart(0);
+        Assert.assertEquals("text/plain", part.getContentType());
+        Assert.assertEquals(Arrays.asList("text/plain", "text/xml"), part.getHeader("Content-Type"));
+        Assert.assertEquals(Arrays.asList("4"), part.getHeader("CONTENT-LENGTH"));
+        // each call returns a list of its own
+        part.getHeader("Content-Length").add("5");
+        Assert.assertEquals(Arrays.asList("4"), part.getHeader("Content-Length"));
+        Assert.assertNull(part.getHeader("Content-ID"));
+        Assert.assertEquals("0", part.getContentId());
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        String boundary = "----=_Part_4_910054940.1065629194743";
+        MIMEConfig config = new MIMEConfig();
+        config.setMaxParts(1);
+        assertLimit(new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), boundary, config), "parts");
+
+        config = new MIMEConfig();
+        config.setMaxHeaderSize(20);
+        assertLimit(new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), boundary, config), "headers");
+
+        config = new MIMEConfig();
+        config.setMaxHeaderCount(1);
+        assertLimit(new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), boundary, config), "headers");
+
+        config = new MIMEConfig();
+        config.setMaxMessageSize(100);
+        assertLimit(new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), boundary, config), "Message");
+        assertLimit(new MIMEMessage(ByteBuffer.wrap(readAll(getClass().getResourceAsStream("/msg.txt"))), boundary, config), "Message");
+    }
+
+    @Test
+    public void testPartSizeLimit() throws Exception {
+        byte[] body = new byte[1000000];
+        Arrays.fill(body, (byte) 'a');
+        ByteArrayOutputStream msg = new ByteArrayOutputStream();
+        msg.write("--boundary\r\n\r\n".getBytes("ISO-8859-1"));
+        msg.write(body);
+        msg.write("\r\n--boundary--\r\n".getBytes("ISO-8859-1"));
+        int[] read = new int[1];
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(msg.toByteArray())) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                read[0] += Math.max(n, 0);
+                return n;
+            }
+        };
+        MIMEConfig config = new MIMEConfig();
+        config.setMaxPartSize(20000);
+        MIMEMessage mm = new MIMEMessage(in, "boundary", config);
+        assertLimit(mm, "Part");
+        // aborted right after the limit, the rest is not read
+        Assert.assertTrue(read[0] < 50000);
+        // the error is sticky
+        assertLimit(mm, "Part");
+    }
+
+    @Test
+    public void testHeaderCountLimit() throws Exception {
+        ByteArrayOutputStream msg = new ByteArrayOutputStream();
+        msg.write("--boundary\r\n".getBytes("ISO-8859-1"));
+        for (int i = 0; i < 200000; i++) {
+            msg.write("a: b\r\n".getBytes("ISO-8859-1"));
+        }
+        msg.write("\r\nbody\r\n--boundary--\r\n".getBytes("ISO-8859-1"));
+        int[] read = new int[1];
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(msg.toByteArray())) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                read[0] += Math.max(n, 0);
+                return n;
+            }
+        };
+        MIMEConfig config = new MIMEConfig();
+        config.setMaxHeaderCount(10);
+        assertLimit(new MIMEMessage(in, "boundary", config), "headers");
+        // aborted in the first buffer, the rest of the header block is not read
+        Assert.assertTrue(read[0] < 50000);
+
+        // folded lines belong to the header they continue
+        String folded = "--boundary\r\nContent-Type: text/plain;\r\n\tcharset=utf-8\r\nContent-ID: <a>\r\n\r\nbody\r\n--boundary--\r\n";
+        config.setMaxHeaderCount(2);
+        MIMEMessage mm = new MIMEMessage(new ByteArrayInputStream(folded.getBytes("ISO-8859-1")), "boundary", config);
+        Assert.assertEquals(2, mm.getPart(0).getAllHeaders().size());
+        mm.close();
+    }
+
+    private static void assertLimit(MIMEMessage mm, String what) {
+        try {
+            mm.parseAll();
+            Assert.fail("Limit is not enforced");
+        } catch (MIMELimitException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(what));
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int len;
+        while ((len = in.read(buf)) != -1) {
+            out.write(buf, 0, len);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link Flow.Publisher}s of parts and of their content.
+ */
+public class PublisherTest {
+
+    private static final String BOUNDARY = "----=_Part_4_910054940.1065629194743";
+    private static final String CID = "1351327060508.1065629194423.IBM.WEBSERVICES@ibm-7pr28r4m35k";
+
+    public PublisherTest() {}
+
+    @Test
+    public void testPartsOneByOne() throws Exception {
+        MIMEConfig config = new MIMEConfig();
+        config.setChunkSize(100);
+        MIMEMessage mm = new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), BOUNDARY, config);
+        List<byte[]> contents = new ArrayList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        mm.getPartPublisher().subscribe(new Flow.Subscriber<MIMEPart>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(MIMEPart part) {
+                // the content is read before the next part is requested
+                contents.add(collect(part.getContentPublisher()).join());
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        done.get(10, TimeUnit.SECONDS);
+
+        List<MIMEPart> expected = new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), BOUNDARY).getAttachments();
+        Assert.assertEquals(expected.size(), contents.size());
+        for (int i = 0; i < contents.size(); i++) {
+            Assert.assertArrayEquals(readAll(expected.get(i).read()), contents.get(i));
+        }
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            MIMEMessage mm = new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), BOUNDARY);
+            MIMEPart part = mm.getPart(CID);
+            byte[] content = collect(part.getContentPublisher(executor)).get(10, TimeUnit.SECONDS);
+
+            MIMEMessage expected = new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), BOUNDARY);
+            Assert.assertArrayEquals(readAll(expected.getPart(CID).read()), content);
+
+            // the content can be read only once
+            try {
+                collect(part.getContentPublisher(executor)).get(10, TimeUnit.SECONDS);
+                Assert.fail("Second subscriber should get an error");
+            } catch (ExecutionException e) {
+                // AssertionError when the assertions are enabled
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException || e.getCause() instanceof AssertionError);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // requests one buffer at a time
+    private static CompletableFuture<byte[]> collect(Flow.Publisher<ByteBuffer> publisher) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        publisher.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                out.write(item.array(), item.arrayOffset() + item.position(), item.remaining());
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(out.toByteArray());
+            }
+        });
+        return result;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int len;
+        while ((len = in.read(buf)) != -1) {
+            out.write(buf, 0, len);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+}
@@ -14,7 +14,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author Martin Grebac
@@ -46,4 +48,47 @@ public class QuotedTest {
         part1.close();
     }
 
+    @Test
+    public void testCustomDecoder() throws Exception {
+        InputStream in = getClass().getResourceAsStream("/quoted.txt");
+        String boundary = "----=_Part_16_799571960.1350659465464";
+        MIMEConfig config = new MIMEConfig();
+        // replaces the built-in decoder, keeps the content as is
+        config.addTransferDecoder(new TransferDecoder() {
+            @Override
+            public Set<String> getEncodings() {
+                return Collections.singleton("Quoted-Printable");
+            }
+
+            @Override
+            public InputStream decode(InputStream in) {
+                return in;
+            }
+        });
+        MIMEMessage mm = new MIMEMessage(in, boundary , config);
+        mm.parseAll();
+
+        MIMEPart part1 = mm.getAttachments().get(1);
+        InputStream is = part1.readOnce();
+        byte[] buf = new byte[8192];
+        int len = is.read(buf, 0, buf.length);
+        String str = new  String(buf, 0, len);
+
+        Assert.assertTrue(str.contains("=3D"));
+
+        part1.close();
+    }
+
+    @Test
+    public void testMissingDecoderProvider() {
+        String name = TransferDecoder.class.getName();
+        System.setProperty(name, "org.jvnet.mimepull.NoSuchDecoder");
+        try {
+            // logged and skipped, the ServiceLoader providers are still looked up
+            Assert.assertTrue(FactoryFinder.findAll(TransferDecoder.class).isEmpty());
+        } finally {
+            System.clearProperty(name);
+        }
+    }
+
 }
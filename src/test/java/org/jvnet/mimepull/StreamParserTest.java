@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0, which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.jvnet.mimepull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MIMEStreamParser}, the data is pushed in random slices.
+ */
+public class StreamParserTest {
+
+    private static final String BOUNDARY = "----=_Part_4_910054940.1065629194743";
+    private static final String CID = "1351327060508.1065629194423.IBM.WEBSERVICES@ibm-7pr28r4m35k";
+
+    public StreamParserTest() {}
+
+    @Test
+    public void testHandler() throws Exception {
+        byte[] msg = load("/msg.txt");
+        List<ByteArrayOutputStream> parts = new ArrayList<>();
+        List<String> cids = new ArrayList<>();
+        MIMEStreamParser parser = new MIMEStreamParser(BOUNDARY, new MIMEConfig(), new MIMEStreamParser.Handler() {
+            @Override
+            public void startPart() {
+                parts.add(new ByteArrayOutputStream());
+            }
+
+            @Override
+            public void headers(List<? extends Header> headers) {
+                for (Header h : headers) {
+                    if (h.getName().equalsIgnoreCase("Content-ID")) {
+                        cids.add(h.getValue());
+                    }
+                }
+            }
+
+            @Override
+            public void content(ByteBuffer data) {
+                parts.get(parts.size() - 1).write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            }
+        });
+        feed(parser, msg, new Random(7), 1);
+        Assert.assertTrue(parser.isDone());
+        Assert.assertNull(parser.getMessage());
+
+        MIMEMessage mm = new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), BOUNDARY);
+        List<MIMEPart> expected = mm.getAttachments();
+        Assert.assertEquals(expected.size(), parts.size());
+        Assert.assertEquals("<" + expected.get(1).getContentId() + ">", cids.get(1));
+        for (int i = 0; i < parts.size(); i++) {
+            Assert.assertArrayEquals(readAll(expected.get(i).read()), parts.get(i).toByteArray());
+        }
+    }
+
+    @Test
+    public void testSmallSlices() throws Exception {
+        for (String name : new String[] {"/msg.txt", "/msg2.txt", "/message1.txt", "/boundary-in-body.txt"}) {
+            String boundary = name.equals("/msg.txt") ? BOUNDARY
+                    : name.equals("/msg2.txt") ? "----=_Part_1_807283631.1066069460327"
+                    : name.equals("/message1.txt") ? "----=_Part_7_10584188.1123489648993"
+                    : "boundary";
+            byte[] msg = load(name);
+            for (int maxSlice : new int[] {1, 7, 100, 5000, msg.length}) {
+                MIMEStreamParser parser = new MIMEStreamParser(boundary, new MIMEConfig());
+                feed(parser, msg, new Random(maxSlice), maxSlice);
+                List<MIMEPart> actual = parser.getMessage().getAttachments();
+
+                MIMEMessage mm = new MIMEMessage(getClass().getResourceAsStream(name), boundary);
+                List<MIMEPart> expected = mm.getAttachments();
+                Assert.assertEquals(name, expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    Assert.assertEquals(expected.get(i).getContentId(), actual.get(i).getContentId());
+                    Assert.assertArrayEquals(name + " slice " + maxSlice,
+                            readAll(expected.get(i).read()), readAll(actual.get(i).read()));
+                }
+            }
+        }
+    }
+
+    // A worker thread reads the part while the data is still being pushed
+    @Test
+    public void testConcurrentReader() throws Exception {
+        byte[] msg = load("/msg.txt");
+        MIMEStreamParser parser = new MIMEStreamParser(BOUNDARY, new MIMEConfig());
+        MIMEMessage mm = parser.getMessage();
+        AtomicReference<byte[]> read = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                read.set(readAll(mm.getPart(CID).readOnce()));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        reader.start();
+        feed(parser, msg, new Random(3), 512);
+        reader.join();
+
+        MIMEMessage expected = new MIMEMessage(getClass().getResourceAsStream("/msg.txt"), BOUNDARY);
+        Assert.assertArrayEquals(readAll(expected.getPart(CID).read()), read.get());
+    }
+
+    @Test
+    public void testNoClosingBoundary() throws Exception {
+        byte[] msg = load("/msg-no-closing-boundary.txt");
+        MIMEStreamParser parser = new MIMEStreamParser(BOUNDARY, new MIMEConfig());
+        parser.feed(ByteBuffer.wrap(msg));
+        try {
+            parser.endOfInput();
+            Assert.fail("Message without closing boundary should not be parsed");
+        } catch (MIMEParsingException e) {
+            Assert.assertTrue(e.getMessage().contains("no closing MIME boundary"));
+        }
+        try {
+            parser.getMessage().getAttachments();
+            Assert.fail("Waiting threads should get the parsing error");
+        } catch (MIMEParsingException e) {
+            Assert.assertTrue(e.getMessage().contains("no closing MIME boundary"));
+        }
+    }
+
+    @Test
+    public void testMessageSizeLimit() throws Exception {
+        byte[] msg = load("/msg.txt");
+        MIMEConfig config = new MIMEConfig();
+        config.setMaxMessageSize(msg.length / 2);
+        MIMEStreamParser parser = new MIMEStreamParser(BOUNDARY, config);
+        try {
+            feed(parser, msg, new Random(5), 100);
+            Assert.fail("Message size limit is not enforced");
+        } catch (MIMELimitException e) {
+            Assert.assertTrue(e.getMessage().contains("Message"));
+        }
+        try {
+            parser.getMessage().getAttachments();
+            Assert.fail("Waiting threads should get the limit error");
+        } catch (MIMELimitException e) {
+            Assert.assertTrue(e.getMessage().contains("Message"));
+        }
+    }
+
+    private static void feed(MIMEStreamParser parser, byte[] msg, Random random, int maxSlice) {
+        int off = 0;
+        while (off < msg.length) {
+            int n = Math.min(msg.length - off, 1 + random.nextInt(maxSlice));
+            parser.feed(ByteBuffer.wrap(msg, off, n));
+            off += n;
+        }
+        parser.endOfInput();
+    }
+
+    private byte[] load(String name) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream(name)) {
+            return readAll(in);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int len;
+        while ((len = in.read(buf)) != -1) {
+            out.write(buf, 0, len);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+}
@@ -113,6 +113,31 @@ public class StreamTest {
         partC.close();
     }
 
+    // Parser buffers are recycled through the pool shared by all the
+    // messages created with the same config.
+    @Test
+    public void testRecycledBuffers() throws Exception {
+        String boundary = "boundary";
+        MIMEConfig config = new MIMEConfig();
+        config.setBufferPoolSize(8);
+        config.setMemoryThreshold(65536);
+        for (int size = 0; size < 200000; size += 9973) {
+            MIMEMessage mm = new MIMEMessage(getInputStream(size), boundary , config);
+
+            MIMEPart partA = mm.getPart("partA");
+            verifyPart(partA.readOnce(), 0, size);
+            partA.close();
+
+            MIMEPart partB = mm.getPart("partB");
+            MIMEPart partC = mm.getPart("partC");
+            verifyPart(partC.read(), 2, size);
+            verifyPart(partB.read(), 1, size);
+            partB.close();
+            partC.close();
+            mm.close();
+        }
+    }
+
     // partB, partA, partC are accessed in that order. Then partA should
     // go to disk. partB, and partC are accessed from in-memory
     @Test